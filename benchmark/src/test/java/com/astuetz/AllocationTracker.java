@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import com.google.monitoring.runtime.instrumentation.AllocationRecorder;
+import com.google.monitoring.runtime.instrumentation.Sampler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the allocations made by the library code on the current thread.
+ * <p/>
+ * An allocation is attributed to the first stack frame outside of the JDK, so boxing or string
+ * building in the library counts, while allocations of Robolectric and the framework shadows
+ * (which do not happen on a device) are ignored.
+ * Allocations made inside of an excluded method are ignored as well.
+ * Requires the allocation instrumenter java agent, see the {@code allocationTest} task.
+ */
+final class AllocationTracker implements Sampler {
+	private static final String LIBRARY_PACKAGE = "com.astuetz.";
+	private static final String[] IGNORED_PACKAGES = {
+			"java.", "javax.", "jdk.", "sun.", "com.google.monitoring."
+	};
+
+	private final Thread thread;
+	private final String[] excludedMethods;
+	private final List<String> allocations = new ArrayList<String>();
+	private volatile boolean tracking;
+
+	private AllocationTracker(Thread thread, String[] excludedMethods) {
+		this.thread = thread;
+		this.excludedMethods = excludedMethods;
+	}
+
+	/**
+	 * @param excludedMethods Fully qualified names of the methods to ignore, e.g.
+	 *                        {@code "com.astuetz.TabTextView.setText"}
+	 */
+	static AllocationTracker install(String... excludedMethods) {
+		final AllocationTracker tracker = new AllocationTracker(Thread.currentThread(), excludedMethods);
+		AllocationRecorder.addSampler(tracker);
+		return tracker;
+	}
+
+	void uninstall() {
+		tracking = false;
+		AllocationRecorder.removeSampler(this);
+	}
+
+	/**
+	 * Runs the task and returns a description of each allocation made by the library meanwhile.
+	 */
+	List<String> track(Runnable task) {
+		allocations.clear();
+
+		tracking = true;
+		try {
+			task.run();
+		} finally {
+			tracking = false;
+		}
+
+		return new ArrayList<String>(allocations);
+	}
+
+	@Override
+	public void sampleAllocation(int count, String desc, Object newObj, long size) {
+		if (!tracking || Thread.currentThread() != thread) {
+			return;
+		}
+
+		final StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+
+		if (isExcluded(stackTrace)) {
+			return;
+		}
+
+		for (StackTraceElement frame : stackTrace) {
+			final String className = frame.getClassName();
+
+			if (className.equals(AllocationTracker.class.getName()) || isIgnored(className)) {
+				continue;
+			}
+
+			if (className.startsWith(LIBRARY_PACKAGE)) {
+				allocations.add(((count >= 0) ? (desc + "[" + count + "]") : desc) + " at " + frame);
+			}
+			return;
+		}
+	}
+
+	private boolean isExcluded(StackTraceElement[] stackTrace) {
+		for (StackTraceElement frame : stackTrace) {
+			final String method = frame.getClassName() + "." + frame.getMethodName();
+
+			for (String excludedMethod : excludedMethods) {
+				if (excludedMethod.equals(method)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean isIgnored(String className) {
+		for (String prefix : IGNORED_PACKAGES) {
+			if (className.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
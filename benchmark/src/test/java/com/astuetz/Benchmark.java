@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Minimal benchmark harness. Every result is printed and appended to
+ * {@code <benchmark.reportDir>/<suite>.csv}, so reports of two runs can be diffed.
+ */
+final class Benchmark {
+
+	interface Body {
+		void run(int iteration);
+	}
+
+	private static final String CSV_HEADER = "benchmark,iterations,mean_ns,median_ns,min_ns,max_ns";
+
+	private static File sReportFile;
+
+	private Benchmark() {
+	}
+
+	/**
+	 * Starts a new report for the given suite, replacing the report of a previous run.
+	 */
+	static void startReport(String suite) {
+		final String reportDir = System.getProperty("benchmark.reportDir", "build/reports/benchmark");
+		final File dir = new File(reportDir);
+
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IllegalStateException("Failed to create report directory: " + dir);
+		}
+
+		sReportFile = new File(dir, suite + ".csv");
+		write(CSV_HEADER, false);
+	}
+
+	static void measure(String name, int warmupIterations, int iterations, Body body) {
+		for (int i = 0; i < warmupIterations; i++) {
+			body.run(i);
+		}
+
+		final long[] samples = new long[iterations];
+
+		for (int i = 0; i < iterations; i++) {
+			final long start = System.nanoTime();
+			body.run(i);
+			samples[i] = System.nanoTime() - start;
+		}
+
+		Arrays.sort(samples);
+
+		long total = 0;
+		for (long sample : samples) {
+			total += sample;
+		}
+
+		final String line = String.format(Locale.US, "%s,%d,%d,%d,%d,%d",
+				name, iterations, total / iterations, samples[iterations / 2], samples[0], samples[iterations - 1]);
+
+		System.out.println(line);
+		write(line, true);
+	}
+
+	private static void write(String line, boolean append) {
+		if (sReportFile == null) {
+			throw new IllegalStateException("startReport() has not been called");
+		}
+
+		Writer writer = null;
+		try {
+			writer = new FileWriter(sReportFile, append);
+			writer.write(line);
+			writer.write('\n');
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to write report: " + sReportFile, e);
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException ignored) {
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Canvas which drops every drawing operation, so the Robolectric canvas shadow
+ * does not record (and allocate) anything while the strip is drawn.
+ */
+class NoOpCanvas extends Canvas {
+	private final int width;
+	private final int height;
+
+	NoOpCanvas(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	@Override
+	public boolean getClipBounds(Rect bounds) {
+		bounds.set(0, 0, width, height);
+		return true;
+	}
+
+	@Override
+	public int save() {
+		return 1;
+	}
+
+	@Override
+	public void restoreToCount(int saveCount) {
+	}
+
+	@Override
+	public void translate(float dx, float dy) {
+	}
+
+	@Override
+	public void drawRect(Rect r, Paint paint) {
+	}
+
+	@Override
+	public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+	}
+
+	@Override
+	public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+	}
+
+	@Override
+	public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+	}
+
+	@Override
+	public void drawText(String text, float x, float y, Paint paint) {
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.graphics.drawable.Drawable;
+import android.support.v4.view.ViewPager;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.astuetz.pagerslidingtabstrip.benchmark.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays page drags and fails if the strip allocates anything in
+ * {@code onPageScrolled()} (including the dispatch to the page listeners), {@code scrollToChild()} or while drawing the strip and its tabs.
+ * Each drag is replayed with every tab container and with the drawing and scrolling options
+ * which have hot paths of their own. Only the adapter rebind of the tabs which the virtualized
+ * container attaches while scrolling is not checked, it calls into the adapter.
+ * Run with: ./gradlew :benchmark:allocationTest
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ScrollAllocationTest {
+	private static final int TAB_COUNT = 50;
+	private static final int DRAG_STEPS = 30;
+	private static final int DRAG_COUNT = 10;
+
+	private static final String VIRTUAL_TAB_REBIND = "com.astuetz.PagerSlidingTabStrip$VirtualTabViewAdapter.bindTabView";
+
+	private enum StripMode {
+		DEFAULT, FLAT, VIRTUALIZED, SCROLL_COALESCING, DECORATION_CACHE
+	}
+
+	private TabStripFixtures.CapturingViewPager pager;
+	private NoOpCanvas canvas;
+	private AllocationTracker tracker;
+
+	@Before
+	public void setUp() {
+		pager = TabStripFixtures.createPager(RuntimeEnvironment.application, TAB_COUNT);
+		canvas = new NoOpCanvas(TabStripFixtures.STRIP_WIDTH, TabStripFixtures.STRIP_HEIGHT);
+		tracker = AllocationTracker.install(VIRTUAL_TAB_REBIND);
+	}
+
+	@After
+	public void tearDown() {
+		tracker.uninstall();
+	}
+
+	@Test
+	public void dragDoesNotAllocate() {
+		assertNoAllocations(createStrip(StripMode.DEFAULT));
+	}
+
+	@Test
+	public void dragWithFlatTabsDoesNotAllocate() {
+		assertNoAllocations(createStrip(StripMode.FLAT));
+	}
+
+	@Test
+	public void dragWithVirtualizedTabsDoesNotAllocate() {
+		assertNoAllocations(createStrip(StripMode.VIRTUALIZED));
+	}
+
+	@Test
+	public void dragWithScrollCoalescingDoesNotAllocate() {
+		assertNoAllocations(createStrip(StripMode.SCROLL_COALESCING));
+	}
+
+	@Test
+	public void dragWithDecorationCacheDoesNotAllocate() {
+		assertNoAllocations(createStrip(StripMode.DECORATION_CACHE));
+	}
+
+	@Test
+	public void dragWithBadgesDoesNotAllocate() {
+		for (StripMode mode : StripMode.values()) {
+			final PagerSlidingTabStrip strip = createStrip(mode);
+
+			for (int i = 0; i < TAB_COUNT; i += 3) {
+				strip.setBadge(i, String.valueOf(i));
+			}
+			TabStripFixtures.layout(strip);
+
+			assertNoAllocations(strip);
+		}
+	}
+
+	@Test
+	public void dragWithPageListenersDoesNotAllocate() {
+		for (StripMode mode : StripMode.values()) {
+			final PagerSlidingTabStrip strip = createStrip(mode);
+
+			for (int i = 0; i < 3; i++) {
+				strip.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener());
+			}
+
+			assertNoAllocations(strip);
+		}
+	}
+
+	private PagerSlidingTabStrip createStrip(StripMode mode) {
+		final PagerSlidingTabStrip strip = new PagerSlidingTabStrip(RuntimeEnvironment.application);
+
+		strip.setFlatTabs(mode == StripMode.FLAT);
+		strip.setVirtualizedTabs(mode == StripMode.VIRTUALIZED);
+		strip.setScrollCoalescingEnabled(mode == StripMode.SCROLL_COALESCING);
+		strip.setDecorationCacheEnabled(mode == StripMode.DECORATION_CACHE);
+		strip.setViewPager(pager);
+		TabStripFixtures.layout(strip);
+
+		return strip;
+	}
+
+	private void assertNoAllocations(final PagerSlidingTabStrip strip) {
+		final Runnable drags = new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < DRAG_COUNT; i++) {
+					replayDragAndDraw(strip, i);
+				}
+			}
+		};
+
+		// the first pass may initialize caches lazily, and measures the virtualized tabs coming into view
+		drags.run();
+
+		final List<String> allocations = tracker.track(drags);
+
+		assertTrue("Allocations on the scroll and draw paths of " + describe(strip) + ":\n" + allocations, allocations.isEmpty());
+	}
+
+	private void replayDragAndDraw(PagerSlidingTabStrip strip, int position) {
+		final ViewPager.OnPageChangeListener listener = pager.listener;
+
+		listener.onPageScrollStateChanged(ViewPager.SCROLL_STATE_DRAGGING);
+		for (int i = 0; i < DRAG_STEPS; i++) {
+			final float offset = (float) i / DRAG_STEPS;
+			listener.onPageScrolled(position, offset, (int) (offset * TabStripFixtures.STRIP_WIDTH));
+			drawFrame(strip);
+		}
+		listener.onPageScrollStateChanged(ViewPager.SCROLL_STATE_IDLE);
+		drawFrame(strip);
+	}
+
+	private void drawFrame(PagerSlidingTabStrip strip) {
+		// the animation frame callbacks, e.g. the coalesced page scroll, run before the frame is drawn
+		ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+		strip.onDraw(canvas);
+
+		final ViewGroup tabsContainer = (ViewGroup) strip.getChildAt(0);
+		final Drawable background = tabsContainer.getBackground();
+
+		// the decoration cache is the background of the tabs container
+		if (background != null) {
+			background.draw(canvas);
+		}
+
+		if (tabsContainer instanceof FlatTabsLayout) {
+			((FlatTabsLayout) tabsContainer).onDraw(canvas);
+			return;
+		}
+
+		final int n = tabsContainer.getChildCount();
+
+		for (int i = 0; i < n; i++) {
+			final View tab = tabsContainer.getChildAt(i);
+			if (tab instanceof TabTextView) {
+				((TabTextView) tab).onDraw(canvas);
+			}
+		}
+	}
+
+	private static String describe(PagerSlidingTabStrip strip) {
+		if (strip.isFlatTabs()) {
+			return "flat tabs";
+		} else if (strip.isVirtualizedTabs()) {
+			return "virtualized tabs";
+		} else if (strip.isScrollCoalescingEnabled()) {
+			return "coalesced page scrolls";
+		} else if (strip.isDecorationCacheEnabled()) {
+			return "the decoration cache";
+		}
+		return "the default strip";
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.v4.view.ViewPager;
+import android.view.View;
+
+import com.astuetz.pagerslidingtabstrip.benchmark.BuildConfig;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Benchmarks of the strip hot paths. Results are written to
+ * {@code build/reports/benchmark/TabStripBenchmark.csv}.
+ * <p/>
+ * Robolectric does not reproduce the absolute costs of a device, so only compare
+ * reports which were produced on the same machine.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TabStripBenchmark {
+	private static final int[] TAB_COUNTS = {10, 100, 1000};
+	private static final int WARMUP_ITERATIONS = 10;
+	private static final int ITERATIONS = 50;
+	private static final int DRAG_STEPS = 30;
+	private static final int GEOMETRY_FRAMES = 100000;
+	private static final int FLAT_TAB_COUNT = 200;
+
+	// keeps the JIT from dropping the results of the geometry benchmark
+	private static volatile int sSink;
+
+	@BeforeClass
+	public static void startReport() {
+		Benchmark.startReport("TabStripBenchmark");
+	}
+
+	@Test
+	public void notifyDataSetChanged() {
+		for (boolean virtualized : new boolean[]{false, true}) {
+			for (int tabCount : TAB_COUNTS) {
+				final PagerSlidingTabStrip strip = TabStripFixtures.createStrip(
+						context(), TabStripFixtures.createPager(context(), tabCount), virtualized);
+
+				Benchmark.measure(name("notifyDataSetChanged", tabCount, virtualized), WARMUP_ITERATIONS, ITERATIONS,
+						new Benchmark.Body() {
+							@Override
+							public void run(int iteration) {
+								strip.notifyDataSetChanged();
+								TabStripFixtures.layout(strip);
+							}
+						});
+			}
+		}
+	}
+
+	@Test
+	public void notifyDataSetChangedIcons() {
+		for (int tabCount : TAB_COUNTS) {
+			final TabStripFixtures.CapturingViewPager pager = new TabStripFixtures.CapturingViewPager(context());
+			pager.setAdapter(new TabStripFixtures.IconAdapter(tabCount));
+
+			final PagerSlidingTabStrip strip = TabStripFixtures.createStrip(context(), pager, false);
+
+			Benchmark.measure(name("notifyDataSetChangedIcons", tabCount, false), WARMUP_ITERATIONS, ITERATIONS,
+					new Benchmark.Body() {
+						@Override
+						public void run(int iteration) {
+							strip.notifyDataSetChanged();
+							TabStripFixtures.layout(strip);
+						}
+					});
+		}
+	}
+
+	@Test
+	public void updateTabStyles() {
+		for (boolean virtualized : new boolean[]{false, true}) {
+			for (int tabCount : TAB_COUNTS) {
+				final PagerSlidingTabStrip strip = TabStripFixtures.createStrip(
+						context(), TabStripFixtures.createPager(context(), tabCount), virtualized);
+
+				Benchmark.measure(name("updateTabStyles", tabCount, virtualized), WARMUP_ITERATIONS, ITERATIONS,
+						new Benchmark.Body() {
+							@Override
+							public void run(int iteration) {
+								// alternate between two sizes, so every iteration really restyles the tabs
+								strip.setTextSize(((iteration & 1) == 0) ? 36 : 40);
+								TabStripFixtures.layout(strip);
+							}
+						});
+			}
+		}
+	}
+
+	@Test
+	public void scrollToChild() {
+		for (boolean virtualized : new boolean[]{false, true}) {
+			for (int tabCount : TAB_COUNTS) {
+				final TabStripFixtures.CapturingViewPager pager = TabStripFixtures.createPager(context(), tabCount);
+				final PagerSlidingTabStrip strip = TabStripFixtures.createStrip(context(), pager, virtualized);
+				final int lastPosition = tabCount - 1;
+
+				Benchmark.measure(name("scrollToChild", tabCount, virtualized), WARMUP_ITERATIONS, ITERATIONS,
+						new Benchmark.Body() {
+							@Override
+							public void run(int iteration) {
+								TabStripFixtures.replayDrag(pager.listener, iteration % lastPosition, DRAG_STEPS);
+								strip.computeScroll();
+							}
+						});
+			}
+		}
+	}
+
+	@Test
+	public void layoutAndDrawFlat() {
+		final Canvas canvas = new Canvas(Bitmap.createBitmap(
+				TabStripFixtures.STRIP_WIDTH, TabStripFixtures.STRIP_HEIGHT, Bitmap.Config.ARGB_8888));
+
+		for (boolean flat : new boolean[]{false, true}) {
+			final ViewPager pager = TabStripFixtures.createPager(context(), FLAT_TAB_COUNT);
+			final PagerSlidingTabStrip strip = flat
+					? TabStripFixtures.createFlatStrip(context(), pager)
+					: TabStripFixtures.createStrip(context(), pager, false);
+
+			Benchmark.measure("layoutAndDraw[tabs=" + FLAT_TAB_COUNT + (flat ? " flat]" : "]"), WARMUP_ITERATIONS, ITERATIONS,
+					new Benchmark.Body() {
+						@Override
+						public void run(int iteration) {
+							strip.forceLayout();
+							strip.getChildAt(0).forceLayout();
+							TabStripFixtures.layout(strip);
+							strip.draw(canvas);
+						}
+					});
+		}
+	}
+
+	@Test
+	public void tabTextViewMeasure() {
+		final TabTextView tab = createTabTextView();
+		final int heightMeasureSpec = View.MeasureSpec.makeMeasureSpec(TabStripFixtures.STRIP_HEIGHT, View.MeasureSpec.EXACTLY);
+		final int widthMeasureSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+
+		Benchmark.measure("TabTextView.onMeasure", WARMUP_ITERATIONS, ITERATIONS * 20,
+				new Benchmark.Body() {
+					@Override
+					public void run(int iteration) {
+						tab.forceLayout();
+						tab.measure(widthMeasureSpec, heightMeasureSpec);
+					}
+				});
+	}
+
+	@Test
+	public void tabTextViewDraw() {
+		final TabTextView tab = createTabTextView();
+		final Canvas canvas = new Canvas(Bitmap.createBitmap(
+				TabStripFixtures.STRIP_WIDTH, TabStripFixtures.STRIP_HEIGHT, Bitmap.Config.ARGB_8888));
+
+		tab.measure(
+				View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+				View.MeasureSpec.makeMeasureSpec(TabStripFixtures.STRIP_HEIGHT, View.MeasureSpec.EXACTLY));
+		tab.layout(0, 0, tab.getMeasuredWidth(), tab.getMeasuredHeight());
+
+		Benchmark.measure("TabTextView.onDraw", WARMUP_ITERATIONS, ITERATIONS * 20,
+				new Benchmark.Body() {
+					@Override
+					public void run(int iteration) {
+						tab.draw(canvas);
+					}
+				});
+	}
+
+	@Test
+	public void geometryScrollFrames() {
+		final int tabCount = 1000;
+		final int[] tabLefts = new int[tabCount];
+		final int[] tabRights = new int[tabCount];
+
+		int left = 0;
+		for (int i = 0; i < tabCount; i++) {
+			tabLefts[i] = left;
+			left += 200 + (i % 5) * 40;
+			tabRights[i] = left;
+		}
+
+		Benchmark.measure("TabStripGeometry[frames=" + GEOMETRY_FRAMES + "]", WARMUP_ITERATIONS, ITERATIONS,
+				new Benchmark.Body() {
+					@Override
+					public void run(int iteration) {
+						int sum = 0;
+						for (int frame = 0; frame < GEOMETRY_FRAMES; frame++) {
+							final int position = frame % (tabCount - 1);
+							final float offset = (frame % DRAG_STEPS) / (float) DRAG_STEPS;
+
+							sum += TabStripGeometry.computeScrollX(
+									tabLefts, tabRights, tabCount, position, offset,
+									TabStripFixtures.STRIP_WIDTH, (frame & 1) == 0, 52);
+							sum += TabStripGeometry.interpolateTabEdge(tabLefts, tabCount, position, offset);
+							sum += TabStripGeometry.interpolateTabEdge(tabRights, tabCount, position, offset);
+						}
+						sSink = sum;
+					}
+				});
+	}
+
+	private static TabTextView createTabTextView() {
+		final TabTextView tab = new TabTextView(context());
+		tab.setText("Top New Free");
+		tab.setPadding(24, 0, 24, 0);
+		return tab;
+	}
+
+	private static Context context() {
+		return RuntimeEnvironment.application;
+	}
+
+	private static String name(String operation, int tabCount, boolean virtualized) {
+		return operation + "[tabs=" + tabCount + (virtualized ? " virtualized]" : "]");
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.content.Context;
+import android.support.v4.view.PagerAdapter;
+import android.support.v4.view.ViewPager;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Strips, pagers and adapters shared by the benchmarks.
+ */
+final class TabStripFixtures {
+
+	static final int STRIP_WIDTH = 1080;
+	static final int STRIP_HEIGHT = 144;
+
+	private static final String[] CATEGORY_NAMES = {
+			"Categories", "Home", "Top Paid", "Top Free", "Top Grossing", "Top New Paid", "Top New Free", "Trending"
+	};
+
+	private TabStripFixtures() {
+	}
+
+	static class TitleAdapter extends PagerAdapter {
+		private final int count;
+
+		TitleAdapter(int count) {
+			this.count = count;
+		}
+
+		@Override
+		public int getCount() {
+			return count;
+		}
+
+		@Override
+		public CharSequence getPageTitle(int position) {
+			return CATEGORY_NAMES[position % CATEGORY_NAMES.length];
+		}
+
+		@Override
+		public Object instantiateItem(ViewGroup container, int position) {
+			return position;
+		}
+
+		@Override
+		public void destroyItem(ViewGroup container, int position, Object object) {
+		}
+
+		@Override
+		public boolean isViewFromObject(View view, Object object) {
+			return false;
+		}
+	}
+
+	static class IconAdapter extends TitleAdapter implements PagerSlidingTabStrip.IconTabProvider {
+		private static final int[] ICONS = {
+				android.R.drawable.ic_menu_add, android.R.drawable.ic_menu_call,
+				android.R.drawable.ic_menu_camera, android.R.drawable.ic_menu_search
+		};
+
+		IconAdapter(int count) {
+			super(count);
+		}
+
+		@Override
+		public int getPageIconResId(int position) {
+			return ICONS[position % ICONS.length];
+		}
+	}
+
+	/**
+	 * ViewPager which gives access to the page listener installed by the strip,
+	 * so page scroll sequences can be replayed without touch events.
+	 */
+	static class CapturingViewPager extends ViewPager {
+		OnPageChangeListener listener;
+
+		CapturingViewPager(Context context) {
+			super(context);
+		}
+
+		@Override
+		public void setOnPageChangeListener(OnPageChangeListener listener) {
+			super.setOnPageChangeListener(listener);
+			this.listener = listener;
+		}
+	}
+
+	static CapturingViewPager createPager(Context context, int tabCount) {
+		final CapturingViewPager pager = new CapturingViewPager(context);
+		pager.setAdapter(new TitleAdapter(tabCount));
+		return pager;
+	}
+
+	static PagerSlidingTabStrip createStrip(Context context, ViewPager pager, boolean virtualized) {
+		final PagerSlidingTabStrip strip = new PagerSlidingTabStrip(context);
+		strip.setVirtualizedTabs(virtualized);
+		strip.setViewPager(pager);
+		layout(strip);
+		return strip;
+	}
+
+	static PagerSlidingTabStrip createFlatStrip(Context context, ViewPager pager) {
+		final PagerSlidingTabStrip strip = new PagerSlidingTabStrip(context);
+		strip.setFlatTabs(true);
+		strip.setViewPager(pager);
+		layout(strip);
+		return strip;
+	}
+
+	static void layout(View view) {
+		view.measure(
+				View.MeasureSpec.makeMeasureSpec(STRIP_WIDTH, View.MeasureSpec.EXACTLY),
+				View.MeasureSpec.makeMeasureSpec(STRIP_HEIGHT, View.MeasureSpec.EXACTLY));
+		view.layout(0, 0, STRIP_WIDTH, STRIP_HEIGHT);
+	}
+
+	/**
+	 * Replays a drag from the given page to the next one, as delivered by ViewPager.
+	 */
+	static void replayDrag(ViewPager.OnPageChangeListener listener, int position, int steps) {
+		listener.onPageScrollStateChanged(ViewPager.SCROLL_STATE_DRAGGING);
+		for (int i = 0; i < steps; i++) {
+			final float offset = (float) i / steps;
+			listener.onPageScrolled(position, offset, (int) (offset * STRIP_WIDTH));
+		}
+		listener.onPageScrollStateChanged(ViewPager.SCROLL_STATE_IDLE);
+	}
+}
@@ -0,0 +1,607 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.support.v4.graphics.drawable.DrawableCompat;
+import android.text.TextUtils;
+import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * Tabs container which measures and draws the titles and badges of all tabs itself,
+ * without any child views. Only supports text tabs. The tabs share a single
+ * {@link TabTextStyle} and a single background drawable, touches are hit-tested
+ * against the tab edges.
+ */
+class FlatTabsLayout extends ViewGroup {
+
+	interface TabAdapter {
+		int getTabCount();
+
+		/**
+		 * Returns the title of the tab, or null to show a placeholder.
+		 */
+		CharSequence getTabTitle(int position);
+
+		CharSequence getTabBadge(int position);
+
+		void onTabClick(int position);
+	}
+
+	private static final int[] STATE_NORMAL = new int[0];
+	private static final int[] STATE_SELECTED = new int[]{android.R.attr.state_selected};
+	private static final int[] STATE_PRESSED = new int[]{android.R.attr.state_pressed};
+	private static final int[] STATE_SELECTED_PRESSED = new int[]{android.R.attr.state_selected, android.R.attr.state_pressed};
+
+	private TabTextStyle style;
+	private final ArrayList<FlatTab> tabs = new ArrayList<FlatTab>();
+	private final Rect clipBounds = new Rect();
+
+	private TabAdapter adapter;
+	private int tabCount;
+	private boolean shouldExpand;
+
+	private ColorStateList textColor;
+	private Drawable tabBackground;
+	private int tabPadding;
+	private boolean allCaps;
+	private TextUtils.TruncateAt ellipsize;
+	private int placeholderWidth;
+	private boolean autoSizeText;
+	private float autoSizeMinTextSize;
+	private boolean autoSizeUniform;
+
+	private int selectedPosition = -1;
+	private int pressedPosition = -1;
+
+	private int[] tabWidths = new int[0];
+	private int[] tabLefts = new int[0];
+	private int[] tabRights = new int[0];
+	private boolean tabWidthsDirty = true;
+	private boolean tabEdgesValid;
+
+	public FlatTabsLayout(Context context) {
+		super(context);
+
+		style = TabTextStyle.getDefault(getResources().getDisplayMetrics().density);
+		setWillNotDraw(false);
+	}
+
+	public void setTabAdapter(TabAdapter adapter) {
+		this.adapter = adapter;
+		notifyDataSetChanged();
+	}
+
+	public void setShouldExpand(boolean shouldExpand) {
+		if (this.shouldExpand != shouldExpand) {
+			this.shouldExpand = shouldExpand;
+			requestLayout();
+		}
+	}
+
+	public void notifyDataSetChanged() {
+		tabCount = (adapter != null) ? adapter.getTabCount() : 0;
+		pressedPosition = -1;
+		selectedPosition = -1;
+
+		// the existing tabs are rebound to the new titles
+		while (tabs.size() > tabCount) {
+			tabs.remove(tabs.size() - 1);
+		}
+		while (tabs.size() < tabCount) {
+			tabs.add(new FlatTab(style));
+		}
+		for (int i = 0; i < tabCount; i++) {
+			bindTab(tabs.get(i), i);
+		}
+
+		tabWidthsDirty = true;
+		tabEdgesValid = false;
+
+		requestLayout();
+		invalidate();
+	}
+
+	public void notifyTabChanged(int position) {
+		if (position < 0 || position >= tabCount) {
+			return;
+		}
+
+		bindTab(tabs.get(position), position);
+
+		if (tabWidthsDirty) {
+			requestLayout();
+		} else {
+			final int oldWidth = tabWidths[position];
+			measureTabWidth(position);
+
+			if (tabWidths[position] != oldWidth) {
+				requestLayout();
+			} else if (autoSizeText) {
+				// a uniform size may change the other tabs too
+				updateTitleTextSizes();
+				invalidate();
+			}
+		}
+		invalidateTab(position);
+	}
+
+	public void notifyTabRangeInserted(int positionStart, int itemCount) {
+		final int oldTabCount = tabCount;
+
+		tabCount += itemCount;
+
+		for (int i = 0; i < itemCount; i++) {
+			final FlatTab tab = new FlatTab(style);
+			tabs.add(positionStart + i, tab);
+			bindTab(tab, positionStart + i);
+		}
+
+		if (!tabWidthsDirty) {
+			ensureTabArraysCapacity(tabCount);
+			System.arraycopy(tabWidths, positionStart, tabWidths, positionStart + itemCount, oldTabCount - positionStart);
+			for (int i = 0; i < itemCount; i++) {
+				measureTabWidth(positionStart + i);
+			}
+		}
+
+		if (selectedPosition >= positionStart) {
+			selectedPosition += itemCount;
+		}
+
+		onTabPositionsChanged();
+	}
+
+	public void notifyTabRangeRemoved(int positionStart, int itemCount) {
+		final int oldTabCount = tabCount;
+
+		tabCount -= itemCount;
+
+		for (int i = positionStart + itemCount - 1; i >= positionStart; i--) {
+			tabs.remove(i);
+		}
+
+		if (!tabWidthsDirty) {
+			final int from = positionStart + itemCount;
+			System.arraycopy(tabWidths, from, tabWidths, positionStart, oldTabCount - from);
+		}
+
+		if (selectedPosition >= positionStart + itemCount) {
+			selectedPosition -= itemCount;
+		} else if (selectedPosition >= positionStart) {
+			selectedPosition = -1;
+		}
+
+		onTabPositionsChanged();
+	}
+
+	public void notifyTabMoved(int fromPosition, int toPosition) {
+		tabs.add(toPosition, tabs.remove(fromPosition));
+
+		if (!tabWidthsDirty) {
+			final int width = tabWidths[fromPosition];
+			if (fromPosition < toPosition) {
+				System.arraycopy(tabWidths, fromPosition + 1, tabWidths, fromPosition, toPosition - fromPosition);
+			} else {
+				System.arraycopy(tabWidths, toPosition, tabWidths, toPosition + 1, fromPosition - toPosition);
+			}
+			tabWidths[toPosition] = width;
+		}
+
+		if (selectedPosition == fromPosition) {
+			selectedPosition = toPosition;
+		} else if (fromPosition < selectedPosition && selectedPosition <= toPosition) {
+			selectedPosition--;
+		} else if (toPosition <= selectedPosition && selectedPosition < fromPosition) {
+			selectedPosition++;
+		}
+
+		onTabPositionsChanged();
+	}
+
+	private void onTabPositionsChanged() {
+		pressedPosition = -1;
+		tabEdgesValid = false;
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Applies a style which is shared with other tabs, see {@link TabTextStyle}.
+	 */
+	public void setTextStyle(TabTextStyle style) {
+		if (this.style == style) {
+			return;
+		}
+
+		this.style = style;
+		for (int i = 0; i < tabs.size(); i++) {
+			tabs.get(i).renderer.setStyle(style);
+		}
+		onTabStyleChanged();
+	}
+
+	public void setAllCaps(boolean allCaps) {
+		if (this.allCaps == allCaps) {
+			return;
+		}
+
+		this.allCaps = allCaps;
+		for (int i = 0; i < tabCount; i++) {
+			tabs.get(i).renderer.setAllCaps(allCaps);
+		}
+		onTabStyleChanged();
+	}
+
+	/**
+	 * @param where START, MIDDLE or END to ellipsize titles wider than their tab, or null
+	 */
+	public void setEllipsize(TextUtils.TruncateAt where) {
+		if (ellipsize == where) {
+			return;
+		}
+
+		ellipsize = where;
+		for (int i = 0; i < tabs.size(); i++) {
+			tabs.get(i).renderer.setEllipsize(where);
+		}
+		invalidate();
+	}
+
+	public void setTabPadding(int paddingPx) {
+		if (tabPadding != paddingPx) {
+			tabPadding = paddingPx;
+			onTabStyleChanged();
+		}
+	}
+
+	/**
+	 * Shrinks titles which do not fit into their tabs, down to the given minimum size.
+	 *
+	 * @param uniform Whether all tabs are drawn with the size of the smallest fitted title
+	 */
+	public void setAutoSizeText(boolean enabled, float minTextSizePx, boolean uniform) {
+		if (autoSizeText == enabled && autoSizeMinTextSize == minTextSizePx && autoSizeUniform == uniform) {
+			return;
+		}
+
+		autoSizeText = enabled;
+		autoSizeMinTextSize = minTextSizePx;
+		autoSizeUniform = uniform;
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Sets the width of the tabs whose adapter returns a null title.
+	 */
+	public void setPlaceholderWidth(int widthPx) {
+		if (placeholderWidth != widthPx) {
+			placeholderWidth = widthPx;
+			onTabStyleChanged();
+		}
+	}
+
+	/**
+	 * @param textColor The text colors, the selected and the pressed state are applied. Null draws white text.
+	 */
+	public void setTextColor(ColorStateList textColor) {
+		if (this.textColor != textColor) {
+			this.textColor = textColor;
+			invalidate();
+		}
+	}
+
+	/**
+	 * Sets the drawable drawn behind every tab, its state is changed to the one of the tab being drawn.
+	 */
+	public void setTabBackground(Drawable background) {
+		if (tabBackground == background) {
+			return;
+		}
+
+		if (tabBackground != null) {
+			tabBackground.setCallback(null);
+		}
+		tabBackground = background;
+		if (background != null) {
+			background.setCallback(this);
+		}
+		invalidate();
+	}
+
+	private void onTabStyleChanged() {
+		tabWidthsDirty = true;
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * @return the number of tabs whose selected state has been changed
+	 */
+	public int setSelectedPosition(int position) {
+		final int oldPosition = selectedPosition;
+
+		if (oldPosition == position) {
+			return 0;
+		}
+
+		selectedPosition = position;
+
+		int changedCount = 0;
+		if (oldPosition >= 0 && oldPosition < tabCount) {
+			invalidateTab(oldPosition);
+			changedCount++;
+		}
+		if (position >= 0 && position < tabCount) {
+			invalidateTab(position);
+			changedCount++;
+		}
+		return changedCount;
+	}
+
+	public int getTabEdgeCount() {
+		return tabEdgesValid ? tabCount : 0;
+	}
+
+	public int[] getTabLefts() {
+		return tabLefts;
+	}
+
+	public int[] getTabRights() {
+		return tabRights;
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		if (tabWidthsDirty) {
+			measureTabWidths();
+		}
+
+		int contentWidth = 0;
+		for (int i = 0; i < tabCount; i++) {
+			contentWidth += tabWidths[i];
+		}
+
+		final int width = resolveSize(contentWidth, widthMeasureSpec);
+		final int height = resolveSize(style.getTextLineHeight(), heightMeasureSpec);
+
+		updateTabEdges(contentWidth, width);
+		updateTitleTextSizes();
+
+		setMeasuredDimension(width, height);
+	}
+
+	@Override
+	protected void onLayout(boolean changed, int l, int t, int r, int b) {
+		// no child views
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+
+		if (!tabEdgesValid || tabCount == 0) {
+			return;
+		}
+
+		// only the tabs inside of the visible scroll window of the parent
+		final Rect clip = clipBounds;
+		if (!canvas.getClipBounds(clip)) {
+			return;
+		}
+
+		final int first = findTabAt(clip.left);
+		final int last = findTabAt(clip.right - 1);
+		final int height = getHeight();
+
+		for (int i = first; i <= last; i++) {
+			final int left = tabLefts[i];
+			final int right = tabRights[i];
+			final int[] state = getTabState(i);
+
+			if (tabBackground != null) {
+				// the drawable is shared by all the tabs, a state change must not start
+				// an exit fade which would then be drawn on the next tab
+				if (tabBackground.setState(state)) {
+					DrawableCompat.jumpToCurrentState(tabBackground);
+				}
+				tabBackground.setBounds(left, 0, right, height);
+				tabBackground.draw(canvas);
+			}
+
+			final int color = (textColor != null) ? textColor.getColorForState(state, 0) : Color.WHITE;
+			tabs.get(i).renderer.draw(canvas, left + tabPadding, 0, right - tabPadding, height, Gravity.CENTER, color);
+		}
+	}
+
+	private int[] getTabState(int position) {
+		final boolean selected = (position == selectedPosition);
+		final boolean pressed = (position == pressedPosition);
+
+		if (selected) {
+			return pressed ? STATE_SELECTED_PRESSED : STATE_SELECTED;
+		} else {
+			return pressed ? STATE_PRESSED : STATE_NORMAL;
+		}
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent event) {
+		if (!isEnabled() || !tabEdgesValid || tabCount == 0) {
+			return false;
+		}
+
+		final int x = (int) event.getX();
+
+		switch (event.getActionMasked()) {
+			case MotionEvent.ACTION_DOWN:
+				// the area behind the last tab does not belong to any tab
+				setPressedPosition((x < tabRights[tabCount - 1]) ? findTabAt(x) : -1);
+				return true;
+			case MotionEvent.ACTION_MOVE:
+				if (pressedPosition >= 0 && (x < tabLefts[pressedPosition] || x >= tabRights[pressedPosition])) {
+					// moved out of the pressed tab
+					setPressedPosition(-1);
+				}
+				return true;
+			case MotionEvent.ACTION_UP: {
+				final int position = pressedPosition;
+				setPressedPosition(-1);
+				if (position >= 0 && adapter != null) {
+					playSoundEffect(SoundEffectConstants.CLICK);
+					adapter.onTabClick(position);
+				}
+				return true;
+			}
+			case MotionEvent.ACTION_CANCEL:
+				// e.g. the parent started scrolling
+				setPressedPosition(-1);
+				return true;
+		}
+
+		return false;
+	}
+
+	private void setPressedPosition(int position) {
+		if (pressedPosition == position) {
+			return;
+		}
+
+		if (pressedPosition >= 0) {
+			invalidateTab(pressedPosition);
+		}
+		pressedPosition = position;
+		if (position >= 0) {
+			invalidateTab(position);
+		}
+	}
+
+	private void invalidateTab(int position) {
+		if (tabEdgesValid && position >= 0 && position < tabCount) {
+			invalidate(tabLefts[position], 0, tabRights[position], getHeight());
+		}
+	}
+
+	@Override
+	protected boolean verifyDrawable(Drawable who) {
+		return (who == tabBackground) || super.verifyDrawable(who);
+	}
+
+	private void bindTab(FlatTab tab, int position) {
+		final TabTextRenderer renderer = tab.renderer;
+		final CharSequence title = adapter.getTabTitle(position);
+
+		tab.placeholder = (title == null);
+
+		renderer.setAllCaps(allCaps);
+		renderer.setEllipsize(ellipsize);
+		renderer.setText(title);
+		renderer.setBadgeText(adapter.getTabBadge(position));
+	}
+
+	private void measureTabWidths() {
+		ensureTabArraysCapacity(tabCount);
+
+		for (int i = 0; i < tabCount; i++) {
+			measureTabWidth(i);
+		}
+
+		tabWidthsDirty = false;
+	}
+
+	private void measureTabWidth(int position) {
+		final FlatTab tab = tabs.get(position);
+		tab.renderer.updateTextBounds();
+
+		int width = tab.renderer.getDesiredWidth() + tabPadding * 2;
+		if (tab.placeholder) {
+			width = Math.max(width, placeholderWidth);
+		}
+		tabWidths[position] = width;
+	}
+
+	private void updateTitleTextSizes() {
+		float uniformSize = Float.MAX_VALUE;
+
+		// the fitted sizes are cached, fitting the same titles to the same widths does not measure any text
+		for (int i = 0; i < tabCount; i++) {
+			final TabTextRenderer renderer = tabs.get(i).renderer;
+			final float size = autoSizeText
+					? renderer.fitTextSize(tabRights[i] - tabLefts[i] - tabPadding * 2, autoSizeMinTextSize)
+					: style.getTextSize();
+
+			renderer.setTitleTextSize(size);
+			uniformSize = Math.min(uniformSize, size);
+		}
+
+		if (autoSizeText && autoSizeUniform) {
+			for (int i = 0; i < tabCount; i++) {
+				tabs.get(i).renderer.setTitleTextSize(uniformSize);
+			}
+		}
+	}
+
+	private void ensureTabArraysCapacity(int capacity) {
+		if (tabWidths.length < capacity) {
+			final int[] widths = new int[Math.max(capacity, tabWidths.length * 2)];
+			System.arraycopy(tabWidths, 0, widths, 0, tabWidths.length);
+			tabWidths = widths;
+			tabLefts = new int[widths.length];
+			tabRights = new int[widths.length];
+		}
+	}
+
+	private void updateTabEdges(int contentWidth, int width) {
+		final boolean expand = shouldExpand && tabCount > 0 && contentWidth < width;
+		final int expandedWidth = expand ? (width / tabCount) : 0;
+		final int expandedRemainder = expand ? (width % tabCount) : 0;
+
+		int left = 0;
+		for (int i = 0; i < tabCount; i++) {
+			final int w = expand ? (expandedWidth + ((i < expandedRemainder) ? 1 : 0)) : tabWidths[i];
+			tabLefts[i] = left;
+			tabRights[i] = left + w;
+			left += w;
+		}
+
+		tabEdgesValid = true;
+	}
+
+	private int findTabAt(int x) {
+		return TabStripGeometry.findTabAt(tabRights, tabCount, x);
+	}
+
+	private static final class FlatTab {
+		final TabTextRenderer renderer;
+		boolean placeholder;
+
+		FlatTab(TabTextStyle style) {
+			renderer = new TabTextRenderer(style);
+		}
+	}
+}
@@ -20,22 +20,31 @@ package com.astuetz;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.content.res.TypedArray;
+import android.database.DataSetObserver;
 import android.graphics.Canvas;
+import android.graphics.ColorFilter;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.support.v4.view.PagerAdapter;
+import android.support.v4.view.ViewCompat;
 import android.support.v4.view.ViewPager;
 import android.support.v4.view.ViewPager.OnPageChangeListener;
+import android.text.TextPaint;
+import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.View;
-import android.view.ViewTreeObserver.OnGlobalLayoutListener;
+import android.view.ViewGroup;
 import android.widget.HorizontalScrollView;
-import android.widget.ImageButton;
 import android.widget.LinearLayout;
 
 import com.astuetz.pagerslidingtabstrip.R;
@@ -48,10 +57,55 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 		int getPageIconResId(int position);
 	}
 
+	/**
+	 * Implemented by adapters whose titles are expensive to get (e.g. built from database rows).
+	 * The strip only asks for the titles of the tabs near the visible area and shows tabs with
+	 * a placeholder width for the others, see {@link #setLazyTitleDistance(int)}.
+	 * A PagerAdapter implements this interface by declaring it, {@code getPageTitle()} is inherited.
+	 */
+	public interface LazyTitleProvider {
+		CharSequence getPageTitle(int position);
+	}
+
+	/**
+	 * Implemented by adapters which provide their own tab views. Views which are no longer
+	 * needed are kept per view type and bound to other tabs, instead of creating new ones.
+	 */
+	public interface CustomTabProvider {
+		/**
+		 * Returns the view type of the tab at the given position, which has to be zero or greater.
+		 */
+		int getTabViewType(int position);
+
+		View createTabView(ViewGroup parent, int viewType);
+
+		void bindTabView(View tab, int position);
+
+		/**
+		 * Called after the view has been detached from the strip, before it is kept for reuse.
+		 */
+		void recycleTabView(View tab);
+	}
+
 	public interface OnTabClickListener {
 		boolean onClick(View v, int position);
 	}
 
+	public interface OnTabsPreMeasuredListener {
+		/**
+		 * Called on the UI thread once the tabs have been created from the pre-measured titles.
+		 */
+		void onTabsPreMeasured(PagerSlidingTabStrip strip);
+	}
+
+	private static final int LAZY_TITLE_CACHE_SIZE = 256;
+
+	// view types of the built-in tabs, the ones of a CustomTabProvider are zero or greater
+	private static final int VIEW_TYPE_TEXT = -1;
+	private static final int VIEW_TYPE_ICON = -2;
+
+	private static final OnPageChangeListener[] NO_PAGE_LISTENERS = new OnPageChangeListener[0];
+
 	public static final int INDICATOR_POSITION_TOP = 0;
 	public static final int INDICATOR_POSITION_BOTTOM = 1;
 
@@ -67,12 +121,20 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
 	private final PageListener pageListener = new PageListener();
 	private OnPageChangeListener delegatePageListener;
+	// copy-on-write, so dispatching an event neither allocates nor fails if a listener removes itself
+	private OnPageChangeListener[] pageListeners = NO_PAGE_LISTENERS;
 	private OnTabClickListener tabClickListener;
 
-	private LinearLayout tabsContainer;
+	private ViewGroup tabsContainer;
 	private ViewPager pager;
 
 	private int tabCount;
+	private int selectedPosition = -1;
+
+	private int styleUpdateDepth;
+	private boolean styleUpdatePending;
+	private int appliedTabBackgroundResId;
+	private int tabSelectedStateChangeCount;
 
 	private int currentPosition = 0;
 	private float currentPositionOffset = 0f;
@@ -87,6 +149,13 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
 	private boolean shouldExpand = false;
 	private boolean textAllCaps = true;
+	private TextUtils.TruncateAt tabEllipsize = null;
+	private boolean autoSizeText = false;
+	private boolean autoSizeUniform = false;
+	private int autoSizeMinTextSize = 9;
+	private boolean virtualizedTabs = false;
+	private boolean flatTabs = false;
+	private boolean decorationCacheEnabled = false;
 
 	private int scrollOffset = 52;
 	private boolean scrollToCenter = false;
@@ -102,6 +171,8 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 	private Typeface tabTypeface = null;
 	private int tabTypefaceStyle = Typeface.BOLD;
 	private int indicatorPosition = INDICATOR_POSITION_BOTTOM;
+	// shared by all text tabs, recreated when the text size or the typeface changes
+	private TabTextStyle tabTextStyle;
 
 	private int lastScrollX = -1;
 	private boolean isScrollingByDrag = false;
@@ -110,6 +181,88 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
 	private Locale locale;
 	private boolean layoutFinished;
+	// the strip scrolls to the current item in its next layout, before it is drawn
+	private boolean scrollToCurrentItemPending;
+	// applied by the first layout after the data set has been bound
+	private SavedState restoredState;
+
+	private final VirtualTabViewAdapter virtualTabViewAdapter = new VirtualTabViewAdapter();
+	private final FlatTabAdapter flatTabAdapter = new FlatTabAdapter();
+	private SparseArray<CharSequence> tabBadges = new SparseArray<CharSequence>();
+
+	private TabStripMetrics metrics;
+
+	private boolean scrollCoalescingEnabled;
+	private boolean pageScrollFramePending;
+	private int pendingScrollPosition;
+	private float pendingScrollPositionOffset;
+	private int pageScrolledEventCount;
+	private int pageScrollFrameCount;
+	private final Runnable pageScrollFrameRunnable = new Runnable() {
+		@Override
+		public void run() {
+			pageScrollFramePending = false;
+			applyPageScroll(pendingScrollPosition, pendingScrollPositionOffset);
+		}
+	};
+
+	private boolean dataSetChangeCoalescingEnabled;
+	private boolean dataSetChangePending;
+	private int collapsedDataSetChangeCount;
+	private final Runnable dataSetChangeRunnable = new Runnable() {
+		@Override
+		public void run() {
+			dataSetChangePending = false;
+			applyDataSetChange();
+		}
+	};
+
+	private final TabTitlePreMeasurer titlePreMeasurer = new TabTitlePreMeasurer();
+	private OnTabsPreMeasuredListener preMeasuredListener;
+	private PagerAdapter preMeasuredAdapter;
+	// room in the shared measure cache for the pre-measured titles, released after the tabs have been laid out
+	private int measureCacheReservation;
+	private final DataSetObserver preMeasuredAdapterObserver = new DataSetObserver() {
+		@Override
+		public void onChanged() {
+			// the titles measured so far may be stale, start over with the new ones
+			notifyDataSetChangedAsync(preMeasuredListener);
+		}
+
+		@Override
+		public void onInvalidated() {
+			onChanged();
+		}
+	};
+
+	// titles of a LazyTitleProvider, keyed by position, trimmed to the ones closest to the window
+	private final SparseArray<CharSequence> lazyTitleCache = new SparseArray<CharSequence>();
+	private int lazyTitleDistance = 4;
+	private int lazyTitlePlaceholderWidth = 72;
+	private int lazyTitleWindowFirst = -1;
+	private int lazyTitleWindowLast = -1;
+	private boolean lazyTitleUpdatePending;
+	private final Runnable lazyTitleUpdateRunnable = new Runnable() {
+		@Override
+		public void run() {
+			lazyTitleUpdatePending = false;
+			updateLazyTitleWindow();
+		}
+	};
+
+	private TabIconCache tabIconCache;
+
+	private final DecorationDrawable decorationDrawable = new DecorationDrawable();
+	private final Rect indicatorRect = new Rect();
+	private final Rect drawnIndicatorRect = new Rect();
+
+	// tab edges, rebuilt in every layout pass of the strip
+	private int[] tabLefts = new int[0];
+	private int[] tabRights = new int[0];
+	private int tabEdgeCount;
+	private final SparseArray<View> measuringTabs = new SparseArray<View>();
+	private final TabViewPool tabViewPool = new TabViewPool();
+	private PagerAdapter boundAdapter;
 
 	public PagerSlidingTabStrip(Context context) {
 		this(context, null);
@@ -125,11 +278,6 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 		setFillViewport(true);
 		setWillNotDraw(false);
 
-		tabsContainer = new LinearLayout(context);
-		tabsContainer.setOrientation(LinearLayout.HORIZONTAL);
-		tabsContainer.setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
-		addView(tabsContainer);
-
 		DisplayMetrics dm = getResources().getDisplayMetrics();
 
 		scrollOffset = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, scrollOffset, dm);
@@ -139,7 +287,9 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 		dividerPadding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dividerPadding, dm);
 		tabPadding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, tabPadding, dm);
 		dividerWidth = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dividerWidth, dm);
+		lazyTitlePlaceholderWidth = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, lazyTitlePlaceholderWidth, dm);
 		tabTextSize = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, tabTextSize, dm);
+		autoSizeMinTextSize = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, autoSizeMinTextSize, dm);
 
 		TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.PagerSlidingTabStrip);
 
@@ -162,10 +312,20 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 		scrollOffset = a.getDimensionPixelSize(R.styleable.PagerSlidingTabStrip_pstsScrollOffset, scrollOffset);
 		scrollToCenter = a.getBoolean(R.styleable.PagerSlidingTabStrip_pstsScrollToCenter, scrollToCenter);
 		textAllCaps = a.getBoolean(R.styleable.PagerSlidingTabStrip_pstsTextAllCaps, textAllCaps);
+		tabEllipsize = TabTextView.getTruncateAt(a, R.styleable.PagerSlidingTabStrip_pstsTabEllipsize, tabEllipsize);
+		autoSizeText = a.getBoolean(R.styleable.PagerSlidingTabStrip_pstsAutoSizeText, autoSizeText);
+		autoSizeMinTextSize = a.getDimensionPixelSize(R.styleable.PagerSlidingTabStrip_pstsAutoSizeMinTextSize, autoSizeMinTextSize);
+		autoSizeUniform = a.getBoolean(R.styleable.PagerSlidingTabStrip_pstsAutoSizeUniform, autoSizeUniform);
 		indicatorPosition = getIndicatorPositionFromTypedArray(a, indicatorPosition);
+		virtualizedTabs = a.getBoolean(R.styleable.PagerSlidingTabStrip_pstsVirtualizedTabs, virtualizedTabs);
+		flatTabs = a.getBoolean(R.styleable.PagerSlidingTabStrip_pstsFlatTabs, flatTabs);
+		decorationCacheEnabled = a.getBoolean(R.styleable.PagerSlidingTabStrip_pstsDecorationCache, decorationCacheEnabled);
 
 		a.recycle();
 
+		tabsContainer = createTabsContainer();
+		addView(tabsContainer);
+
 		rectPaint = new Paint();
 		rectPaint.setAntiAlias(true);
 		rectPaint.setStyle(Style.FILL);
@@ -183,6 +343,24 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 	}
 
 	public void setViewPager(ViewPager pager) {
+		attachViewPager(pager);
+
+		notifyDataSetChanged();
+	}
+
+	/**
+	 * Same as {@link #setViewPager(ViewPager)}, but the tabs are created after the
+	 * titles have been measured in the background, see {@link #notifyDataSetChangedAsync(OnTabsPreMeasuredListener)}.
+	 */
+	public void setViewPagerAsync(ViewPager pager, OnTabsPreMeasuredListener listener) {
+		attachViewPager(pager);
+
+		notifyDataSetChangedAsync(listener);
+	}
+
+	private void attachViewPager(ViewPager pager) {
+		cancelPreMeasure();
+
 		this.pager = pager;
 
 		if (pager.getAdapter() == null) {
@@ -190,274 +368,1621 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 		}
 
 		pager.setOnPageChangeListener(pageListener);
-
-		notifyDataSetChanged();
 	}
 
 	public void setOnPageChangeListener(OnPageChangeListener listener) {
 		this.delegatePageListener = listener;
 	}
 
+	/**
+	 * Adds a listener which is called for every page change event of the pager, in addition
+	 * to the one set by {@link #setOnPageChangeListener(OnPageChangeListener)}.
+	 */
+	public void addOnPageChangeListener(OnPageChangeListener listener) {
+		if (listener == null) {
+			return;
+		}
+
+		final OnPageChangeListener[] oldListeners = pageListeners;
+		final OnPageChangeListener[] newListeners = new OnPageChangeListener[oldListeners.length + 1];
+
+		System.arraycopy(oldListeners, 0, newListeners, 0, oldListeners.length);
+		newListeners[oldListeners.length] = listener;
+
+		pageListeners = newListeners;
+	}
+
+	public void removeOnPageChangeListener(OnPageChangeListener listener) {
+		final OnPageChangeListener[] oldListeners = pageListeners;
+		int index = -1;
+
+		for (int i = 0; i < oldListeners.length; i++) {
+			if (oldListeners[i] == listener) {
+				index = i;
+				break;
+			}
+		}
+
+		if (index < 0) {
+			return;
+		}
+
+		if (oldListeners.length == 1) {
+			pageListeners = NO_PAGE_LISTENERS;
+			return;
+		}
+
+		final OnPageChangeListener[] newListeners = new OnPageChangeListener[oldListeners.length - 1];
+
+		System.arraycopy(oldListeners, 0, newListeners, 0, index);
+		System.arraycopy(oldListeners, index + 1, newListeners, index, newListeners.length - index);
+
+		pageListeners = newListeners;
+	}
+
 	public void setOnTabClickListener(OnTabClickListener listener) {
 		this.tabClickListener = listener;
 	}
 
 	public void notifyDataSetChanged() {
+		// the titles being pre-measured are outdated, even if the rebuild is coalesced
+		cancelPreMeasure();
+
+		if (dataSetChangeCoalescingEnabled) {
+			if (dataSetChangePending) {
+				collapsedDataSetChangeCount++;
+			} else {
+				dataSetChangePending = true;
+				ViewCompat.postOnAnimation(this, dataSetChangeRunnable);
+			}
+		} else {
+			applyDataSetChangeNow();
+		}
+	}
+
+	/**
+	 * Rebuilds the tabs right away, a pending coalesced rebuild is superseded by this one.
+	 */
+	private void applyDataSetChangeNow() {
+		cancelPendingDataSetChange();
+		applyDataSetChange();
+	}
+
+	private void applyDataSetChange() {
+		final long startTime = (metrics != null) ? metrics.startTiming() : 0;
+
+		cancelPreMeasure();
+		resetLazyTitles();
+
+		final PagerAdapter adapter = pager.getAdapter();
+		final boolean adapterChanged = (adapter != boundAdapter);
+
+		if (flatTabs && (adapter instanceof IconTabProvider || adapter instanceof CustomTabProvider)) {
+			throw new IllegalStateException("Flat tabs only support text tabs.");
+		}
+
+		tabCount = adapter.getCount();
+		selectedPosition = -1;
+		boundAdapter = adapter;
+		// the badges are keyed by position, which may now belong to other pages
+		tabBadges.clear();
+
+		if (adapterChanged) {
+			// view types of different adapters are not compatible
+			discardTabViews();
+
+			// the icons of the old adapter are most likely not used anymore
+			if (tabIconCache != null) {
+				tabIconCache.clear();
+			}
+		}
+
+		if (flatTabs) {
+			((FlatTabsLayout) tabsContainer).notifyDataSetChanged();
+		} else if (virtualizedTabs) {
+			((VirtualTabsLayout) tabsContainer).notifyDataSetChanged();
+		} else {
+			rebuildTabs();
+		}
+
+		scrollToCurrentItemPending = true;
+		requestLayout();
+
+		if (metrics != null) {
+			metrics.record(TabStripMetrics.OPERATION_NOTIFY_DATA_SET_CHANGED, startTime);
+		}
+	}
 
+	/**
+	 * Binds the existing tab views to the new data, creating views only if there are not enough of a view type.
+	 */
+	private void rebuildTabs() {
+		final int oldCount = tabsContainer.getChildCount();
+		final View[] oldTabs = new View[oldCount];
+		final View[] tabs = new View[tabCount];
+
+		for (int i = 0; i < oldCount; i++) {
+			oldTabs[i] = tabsContainer.getChildAt(i);
+		}
 		tabsContainer.removeAllViews();
 
-		tabCount = pager.getAdapter().getCount();
+		// keep the views which already have the right type at their position
+		final int n = Math.min(oldCount, tabCount);
+		for (int i = 0; i < n; i++) {
+			if (getTabViewType(oldTabs[i]) == getTabViewType(i)) {
+				tabs[i] = oldTabs[i];
+				oldTabs[i] = null;
+			}
+		}
+
+		for (int i = 0; i < oldCount; i++) {
+			if (oldTabs[i] != null) {
+				recycleTab(oldTabs[i]);
+			}
+		}
 
 		for (int i = 0; i < tabCount; i++) {
+			final View tab = (tabs[i] != null) ? tabs[i] : obtainTab(i);
+			setTabViewSelected(tab, false);
+			bindTab(tab, i);
+			tabsContainer.addView(tab, i, shouldExpand ? expandedTabLayoutParams : defaultTabLayoutParams);
+		}
+	}
+
+	private void discardTabViews() {
+		tabViewPool.clear();
+		measuringTabs.clear();
+
+		if (virtualizedTabs) {
+			((VirtualTabsLayout) tabsContainer).discardTabViews();
+		} else {
+			tabsContainer.removeAllViews();
+		}
+	}
+
+	/**
+	 * Rebuilds the tabs like {@link #notifyDataSetChanged()}, but measures the titles on
+	 * background threads first, so the new tabs do not measure any text on the UI thread.
+	 * The current tabs are kept until the measurement has finished, then they are rebuilt
+	 * right away, even if data set change coalescing is enabled.
+	 * <p/>
+	 * If the adapter notifies a change meanwhile, the measurement starts over with the new titles.
+	 * It is cancelled (and the listener is not called) by {@link #cancelPreMeasure()},
+	 * {@link #notifyDataSetChanged()} and {@link #setViewPager(ViewPager)}.
+	 *
+	 * @param listener Called once the tabs have been created, may be null
+	 */
+	public void notifyDataSetChangedAsync(OnTabsPreMeasuredListener listener) {
+		cancelPreMeasure();
+
+		final PagerAdapter adapter = pager.getAdapter();
+
+		if (adapter instanceof IconTabProvider || adapter instanceof LazyTitleProvider || adapter instanceof CustomTabProvider) {
+			// nothing to measure up front, the tabs have to exist when the listener is called
+			applyDataSetChangeNow();
+			if (listener != null) {
+				listener.onTabsPreMeasured(this);
+			}
+			return;
+		}
+
+		// the adapter may only be accessed from the UI thread
+		final int count = adapter.getCount();
+		final String[] titles = new String[count];
+		for (int i = 0; i < count; i++) {
+			titles[i] = adapter.getPageTitle(i).toString();
+		}
+
+		preMeasuredListener = listener;
+		preMeasuredAdapter = adapter;
+		measureCacheReservation = count;
+		TabTextRenderer.reserveMeasureCacheCapacity(count);
+		adapter.registerDataSetObserver(preMeasuredAdapterObserver);
+
+		titlePreMeasurer.start(titles, textAllCaps, new TextPaint(getTabTextStyle().getTextPaint()), new TabTitlePreMeasurer.Callback() {
+			@Override
+			public void onTitlesMeasured() {
+				final OnTabsPreMeasuredListener listener = preMeasuredListener;
+
+				// not coalesced, the tabs have to exist when the listener is called
+				applyDataSetChangeNow();
+
+				if (listener != null) {
+					listener.onTabsPreMeasured(PagerSlidingTabStrip.this);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Cancels the pending {@link #notifyDataSetChangedAsync(OnTabsPreMeasuredListener)} call (if any).
+	 */
+	public void cancelPreMeasure() {
+		if (titlePreMeasurer.isRunning()) {
+			titlePreMeasurer.cancel();
+			releaseMeasureCacheReservation();
+		}
+
+		if (preMeasuredAdapter != null) {
+			preMeasuredAdapter.unregisterDataSetObserver(preMeasuredAdapterObserver);
+			preMeasuredAdapter = null;
+		}
+		preMeasuredListener = null;
+	}
+
+	private void releaseMeasureCacheReservation() {
+		if (measureCacheReservation > 0) {
+			TabTextRenderer.releaseMeasureCacheCapacity(measureCacheReservation);
+			measureCacheReservation = 0;
+		}
+	}
+
+	public boolean isPreMeasuring() {
+		return titlePreMeasurer.isRunning();
+	}
+
+	/**
+	 * Rebinds the tab at the given position after its title or icon changed,
+	 * without rebuilding the other tabs.
+	 */
+	public void notifyTabChanged(int position) {
+		if (flushPendingDataSetChange()) {
+			return;
+		}
+
+		checkTabPosition(position, tabCount);
+
+		lazyTitleCache.remove(position);
+
+		rebindTab(position);
+	}
+
+	private void rebindTab(int position) {
+		if (flatTabs) {
+			((FlatTabsLayout) tabsContainer).notifyTabChanged(position);
+		} else if (virtualizedTabs) {
+			((VirtualTabsLayout) tabsContainer).notifyTabChanged(position);
+		} else {
+			final View tab = tabsContainer.getChildAt(position);
+
+			if (getTabViewType(tab) == getTabViewType(position)) {
+				bindTab(tab, position);
+			} else {
+				// the tab needs another view type
+				final boolean selected = tab.isSelected();
+				tabsContainer.removeViewAt(position);
+				recycleTab(tab);
+
+				final View newTab = obtainTab(position);
+				setTabViewSelected(newTab, selected);
+				bindTab(newTab, position);
+				tabsContainer.addView(newTab, position, shouldExpand ? expandedTabLayoutParams : defaultTabLayoutParams);
+			}
+		}
+	}
+
+	/**
+	 * Adds tabs for the pages which have been inserted into the adapter,
+	 * keeping the views of the existing tabs.
+	 */
+	public void notifyTabRangeInserted(int positionStart, int itemCount) {
+		if (flushPendingDataSetChange()) {
+			return;
+		}
+
+		// an empty range at the end, the tabs may be inserted after the last one
+		checkTabRange(positionStart, 0, tabCount);
+		if (itemCount < 0) {
+			throw new IndexOutOfBoundsException("Invalid tab count specified: " + itemCount);
+		}
+		if (itemCount == 0) {
+			return;
+		}
+
+		resetLazyTitles();
+		tabCount += itemCount;
+
+		selectedPosition = getPositionAfterInsert(selectedPosition, positionStart, itemCount);
+		if (tabBadges.size() > 0) {
+			final SparseArray<CharSequence> badges = new SparseArray<CharSequence>();
+			for (int i = 0; i < tabBadges.size(); i++) {
+				badges.put(getPositionAfterInsert(tabBadges.keyAt(i), positionStart, itemCount), tabBadges.valueAt(i));
+			}
+			tabBadges = badges;
+		}
+
+		if (flatTabs) {
+			((FlatTabsLayout) tabsContainer).notifyTabRangeInserted(positionStart, itemCount);
+		} else if (virtualizedTabs) {
+			((VirtualTabsLayout) tabsContainer).notifyTabRangeInserted(positionStart, itemCount);
+		} else {
+			for (int i = positionStart; i < positionStart + itemCount; i++) {
+				View tab = obtainTab(i);
+				setTabViewSelected(tab, false);
+				bindTab(tab, i);
+				tabsContainer.addView(tab, i, shouldExpand ? expandedTabLayoutParams : defaultTabLayoutParams);
+			}
+			updateTabPositionTags(positionStart + itemCount, tabCount);
+		}
+	}
+
+	/**
+	 * Removes the tabs of the pages which have been removed from the adapter,
+	 * keeping the views of the remaining tabs.
+	 */
+	public void notifyTabRangeRemoved(int positionStart, int itemCount) {
+		if (flushPendingDataSetChange()) {
+			return;
+		}
+
+		checkTabRange(positionStart, itemCount, tabCount);
+		if (itemCount == 0) {
+			return;
+		}
+
+		resetLazyTitles();
+		tabCount -= itemCount;
+
+		selectedPosition = getPositionAfterRemove(selectedPosition, positionStart, itemCount);
+		if (tabBadges.size() > 0) {
+			final SparseArray<CharSequence> badges = new SparseArray<CharSequence>();
+			for (int i = 0; i < tabBadges.size(); i++) {
+				final int position = getPositionAfterRemove(tabBadges.keyAt(i), positionStart, itemCount);
+				if (position >= 0) {
+					badges.put(position, tabBadges.valueAt(i));
+				}
+			}
+			tabBadges = badges;
+		}
+
+		if (flatTabs) {
+			((FlatTabsLayout) tabsContainer).notifyTabRangeRemoved(positionStart, itemCount);
+		} else if (virtualizedTabs) {
+			((VirtualTabsLayout) tabsContainer).notifyTabRangeRemoved(positionStart, itemCount);
+		} else {
+			for (int i = positionStart + itemCount - 1; i >= positionStart; i--) {
+				final View tab = tabsContainer.getChildAt(i);
+				tabsContainer.removeViewAt(i);
+				recycleTab(tab);
+			}
+			updateTabPositionTags(positionStart, tabCount);
+		}
+	}
+
+	/**
+	 * Moves the tab of a page which has been moved within the adapter.
+	 */
+	public void notifyTabMoved(int fromPosition, int toPosition) {
+		if (flushPendingDataSetChange()) {
+			return;
+		}
+
+		checkTabPosition(fromPosition, tabCount);
+		checkTabPosition(toPosition, tabCount);
+
+		if (fromPosition == toPosition) {
+			return;
+		}
+
+		resetLazyTitles();
+
+		selectedPosition = getPositionAfterMove(selectedPosition, fromPosition, toPosition);
+		if (tabBadges.size() > 0) {
+			final SparseArray<CharSequence> badges = new SparseArray<CharSequence>();
+			for (int i = 0; i < tabBadges.size(); i++) {
+				badges.put(getPositionAfterMove(tabBadges.keyAt(i), fromPosition, toPosition), tabBadges.valueAt(i));
+			}
+			tabBadges = badges;
+		}
+
+		if (flatTabs) {
+			((FlatTabsLayout) tabsContainer).notifyTabMoved(fromPosition, toPosition);
+		} else if (virtualizedTabs) {
+			((VirtualTabsLayout) tabsContainer).notifyTabMoved(fromPosition, toPosition);
+		} else {
+			View tab = tabsContainer.getChildAt(fromPosition);
+			tabsContainer.removeViewAt(fromPosition);
+			tabsContainer.addView(tab, toPosition, tab.getLayoutParams());
+			updateTabPositionTags(Math.min(fromPosition, toPosition), Math.max(fromPosition, toPosition) + 1);
+		}
+	}
+
+	/**
+	 * Shows a badge on the tab at the given position. Unlike encoding the badge into
+	 * the page title ("Title <12>"), this only updates the badge of that tab and only
+	 * relayouts the strip if the width of the tab changes.
+	 * <p/>
+	 * The badges move with their tabs on {@link #notifyTabRangeInserted(int, int)},
+	 * {@link #notifyTabRangeRemoved(int, int)} and {@link #notifyTabMoved(int, int)}.
+	 * {@link #notifyDataSetChanged()} and a new pager or adapter clear all the badges,
+	 * because the strip cannot tell which tab has moved where.
+	 *
+	 * @throws IndexOutOfBoundsException if there is no tab at the position
+	 */
+	public void setBadge(int position, CharSequence badge) {
+		flushPendingDataSetChange();
+		checkTabPosition(position, tabCount);
+
+		if (badge == null) {
+			clearBadge(position);
+			return;
+		}
+
+		tabBadges.put(position, badge);
+		onTabBadgeChanged(position);
+	}
+
+	public void clearBadge(int position) {
+		flushPendingDataSetChange();
+		checkTabPosition(position, tabCount);
+
+		if (tabBadges.get(position) == null) {
+			return;
+		}
+
+		tabBadges.remove(position);
+		onTabBadgeChanged(position);
+	}
+
+	public CharSequence getBadge(int position) {
+		return tabBadges.get(position);
+	}
+
+	private void onTabBadgeChanged(int position) {
+		if (flatTabs) {
+			((FlatTabsLayout) tabsContainer).notifyTabChanged(position);
+		} else if (virtualizedTabs) {
+			((VirtualTabsLayout) tabsContainer).notifyTabChanged(position);
+		} else {
+			bindTabBadge(tabsContainer.getChildAt(position), position);
+		}
+	}
+
+	private static void checkTabPosition(int position, int tabCount) {
+		if (position < 0 || position >= tabCount) {
+			throw new IndexOutOfBoundsException(
+				"Invalid tab position specified: " + position + ", tab count: " + tabCount);
+		}
+	}
+
+	private static void checkTabRange(int positionStart, int itemCount, int tabCount) {
+		if (positionStart < 0 || itemCount < 0 || positionStart + itemCount > tabCount) {
+			throw new IndexOutOfBoundsException(
+				"Invalid tab range specified: [" + positionStart + ", " + (positionStart + itemCount) + "), tab count: " + tabCount);
+		}
+	}
+
+	private static int getPositionAfterInsert(int position, int positionStart, int itemCount) {
+		return (position >= positionStart) ? (position + itemCount) : position;
+	}
+
+	private static int getPositionAfterRemove(int position, int positionStart, int itemCount) {
+		if (position >= positionStart + itemCount) {
+			return position - itemCount;
+		} else if (position >= positionStart) {
+			return -1;
+		} else {
+			return position;
+		}
+	}
+
+	private static int getPositionAfterMove(int position, int fromPosition, int toPosition) {
+		if (position == fromPosition) {
+			return toPosition;
+		} else if (fromPosition < position && position <= toPosition) {
+			return position - 1;
+		} else if (toPosition <= position && position < fromPosition) {
+			return position + 1;
+		} else {
+			return position;
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private ViewGroup createTabsContainer() {
+		final ViewGroup container;
+
+		if (flatTabs) {
+			FlatTabsLayout layout = new FlatTabsLayout(getContext());
+			layout.setShouldExpand(shouldExpand);
+			layout.setPlaceholderWidth(lazyTitlePlaceholderWidth);
+			applyFlatTabStyle(layout, true);
+			layout.setTabAdapter(flatTabAdapter);
+			container = layout;
+		} else if (virtualizedTabs) {
+			VirtualTabsLayout layout = new VirtualTabsLayout(getContext());
+			layout.setShouldExpand(shouldExpand);
+			layout.setTabViewAdapter(virtualTabViewAdapter);
+			container = layout;
+		} else {
+			LinearLayout layout = new LinearLayout(getContext());
+			layout.setOrientation(LinearLayout.HORIZONTAL);
+			container = layout;
+		}
+
+		container.setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+
+		if (decorationCacheEnabled) {
+			container.setBackgroundDrawable(decorationDrawable);
+		}
+
+		return container;
+	}
+
+	private int getTabViewType(int position) {
+		final PagerAdapter adapter = pager.getAdapter();
+
+		if (adapter instanceof CustomTabProvider) {
+			final int viewType = ((CustomTabProvider) adapter).getTabViewType(position);
+			if (viewType < 0) {
+				throw new IllegalStateException("CustomTabProvider returned a negative view type: " + viewType);
+			}
+			return viewType;
+		} else if (adapter instanceof IconTabProvider) {
+			return VIEW_TYPE_ICON;
+		} else {
+			return VIEW_TYPE_TEXT;
+		}
+	}
+
+	/**
+	 * Returns a styled tab view for the given position, reusing a recycled one if possible.
+	 */
+	private View obtainTab(int position) {
+		final int viewType = getTabViewType(position);
+		View tab = tabViewPool.get(viewType);
+
+		if (tab == null) {
+			tab = createTab(viewType);
+			updateTabStyle(tab, true);
+		}
+
+		return tab;
+	}
+
+	private void recycleTab(View tab) {
+		if (pager.getAdapter() instanceof CustomTabProvider) {
+			((CustomTabProvider) pager.getAdapter()).recycleTabView(tab);
+		}
+		tabViewPool.put(getTabViewType(tab), tab);
+	}
+
+	private View createTab(int viewType) {
+		final View tab;
+
+		if (viewType == VIEW_TYPE_ICON) {
+			tab = new TabIconView(getContext());
+		} else if (viewType == VIEW_TYPE_TEXT) {
+			TabTextView textTab = new TabTextView(getContext());
+			textTab.setGravity(Gravity.CENTER);
+			tab = textTab;
+		} else {
+			tab = ((CustomTabProvider) pager.getAdapter()).createTabView(tabsContainer, viewType);
+		}
+
+		tab.setFocusable(true);
+		tab.setOnClickListener(mTabOnClickListener);
+		getTabTag(tab).viewType = viewType;
+
+		return tab;
+	}
+
+	private void bindTab(View tab, int position) {
+		setTabPosition(tab, position);
+
+		if (getTabViewType(tab) >= 0) {
+			((CustomTabProvider) pager.getAdapter()).bindTabView(tab, position);
+		} else if (tab instanceof TabTextView) {
+			final TabTextView textTab = (TabTextView) tab;
+			final CharSequence title = getTabTitle(position);
+
+			if (title != null) {
+				textTab.setMinWidth(0);
+				textTab.setText(title.toString());
+			} else {
+				textTab.setText("");
+				textTab.setMinWidth(lazyTitlePlaceholderWidth);
+			}
+			bindTabBadge(tab, position);
+		} else {
+			final TabIconView iconTab = (TabIconView) tab;
+			final int resId = ((IconTabProvider) pager.getAdapter()).getPageIconResId(position);
+
+			if (iconTab.getIconResId() != resId || iconTab.getIconDrawable() == null) {
+				iconTab.setIcon(resId, getTabIconCache().getDrawable(resId));
+			}
+			// the icon has no text, accessibility services read the page title instead
+			iconTab.setContentDescription(pager.getAdapter().getPageTitle(position));
+		}
+	}
+
+	private TabIconCache getTabIconCache() {
+		if (tabIconCache == null) {
+			tabIconCache = new TabIconCache(getResources());
+		}
+		return tabIconCache;
+	}
+
+	private void bindTabBadge(View tab, int position) {
+		if (!(tab instanceof TabTextView)) {
+			return;
+		}
+
+		// null falls back to the badge encoded in the page title (if any)
+		((TabTextView) tab).setBadgeText(tabBadges.get(position));
+	}
+
+	/**
+	 * Returns the title of the tab, or null if the adapter is a LazyTitleProvider
+	 * and the tab is too far away from the visible area.
+	 */
+	private CharSequence getTabTitle(int position) {
+		final PagerAdapter adapter = pager.getAdapter();
+
+		if (!(adapter instanceof LazyTitleProvider)) {
+			return adapter.getPageTitle(position);
+		}
+
+		CharSequence title = lazyTitleCache.get(position);
+
+		if (title == null && isInLazyTitleWindow(position)) {
+			title = ((LazyTitleProvider) adapter).getPageTitle(position);
+			lazyTitleCache.put(position, title);
+		}
+
+		return title;
+	}
+
+	private boolean isInLazyTitleWindow(int position) {
+		if (lazyTitleWindowFirst < 0) {
+			// not laid out yet, take the tabs around the current page until the edges are known
+			return Math.abs(position - pager.getCurrentItem()) <= lazyTitleDistance;
+		}
+		return (position >= lazyTitleWindowFirst && position <= lazyTitleWindowLast);
+	}
+
+	private boolean hasLazyTitles() {
+		return (pager != null && pager.getAdapter() instanceof LazyTitleProvider);
+	}
+
+	private void resetLazyTitles() {
+		lazyTitleCache.clear();
+		lazyTitleWindowFirst = -1;
+		lazyTitleWindowLast = -1;
+	}
+
+	private void scheduleLazyTitleUpdate() {
+		if (!lazyTitleUpdatePending && hasLazyTitles()) {
+			lazyTitleUpdatePending = true;
+			post(lazyTitleUpdateRunnable);
+		}
+	}
+
+	/**
+	 * Resolves the titles of the tabs which came within the lazy title distance of the visible area.
+	 */
+	private void updateLazyTitleWindow() {
+		final int edgeCount = Math.min(tabEdgeCount, tabCount);
+
+		if (!hasLazyTitles() || edgeCount == 0) {
+			return;
+		}
+
+		final int windowLeft = getScrollX();
+		final int first = Math.max(0, findTabAt(windowLeft) - lazyTitleDistance);
+		final int last = Math.min(edgeCount - 1, findTabAt(windowLeft + getWidth() - 1) + lazyTitleDistance);
+
+		if (first == lazyTitleWindowFirst && last == lazyTitleWindowLast) {
+			return;
+		}
+
+		lazyTitleWindowFirst = first;
+		lazyTitleWindowLast = last;
+
+		for (int i = first; i <= last; i++) {
+			if (lazyTitleCache.get(i) == null) {
+				// rebinding resolves the title, the tab is inside of the window now
+				rebindTab(i);
+			}
+		}
+
+		trimLazyTitleCache();
+	}
+
+	/**
+	 * Drops the titles which are farthest away from the window, the positions are sorted.
+	 */
+	private void trimLazyTitleCache() {
+		final SparseArray<CharSequence> cache = lazyTitleCache;
+
+		while (cache.size() > LAZY_TITLE_CACHE_SIZE) {
+			final int lastIndex = cache.size() - 1;
+
+			if (lazyTitleWindowFirst - cache.keyAt(0) > cache.keyAt(lastIndex) - lazyTitleWindowLast) {
+				cache.removeAt(0);
+			} else {
+				cache.removeAt(lastIndex);
+			}
+		}
+	}
+
+	/**
+	 * Starts a batch of style changes. The style setters called until the matching
+	 * {@link #commitStyleUpdate()} call are applied to all tabs in a single pass,
+	 * which ends in a single measure/layout of the tabs.
+	 */
+	public void beginStyleUpdate() {
+		styleUpdateDepth++;
+	}
+
+	public void commitStyleUpdate() {
+		if (styleUpdateDepth == 0) {
+			throw new IllegalStateException("commitStyleUpdate() called without beginStyleUpdate()");
+		}
+
+		styleUpdateDepth--;
+
+		if (styleUpdateDepth == 0 && styleUpdatePending) {
+			styleUpdatePending = false;
+			updateTabStyles();
+		}
+	}
+
+	private void updateTabStyles() {
+
+		if (styleUpdateDepth > 0) {
+			styleUpdatePending = true;
+			return;
+		}
+
+		final long startTime = (metrics != null) ? metrics.startTiming() : 0;
+
+		// inflating the background drawable is expensive, only do it if it has been changed
+		final boolean updateBackground = (tabBackgroundResId != appliedTabBackgroundResId);
+		final int n = tabsContainer.getChildCount();
+
+		for (int i = 0; i < n; i++) {
+			updateTabStyle(tabsContainer.getChildAt(i), updateBackground);
+		}
+
+		appliedTabBackgroundResId = tabBackgroundResId;
+
+		// recycled views still have the old style applied
+		tabViewPool.clear();
+		measuringTabs.clear();
+
+		if (flatTabs) {
+			applyFlatTabStyle((FlatTabsLayout) tabsContainer, updateBackground);
+		} else if (virtualizedTabs) {
+			((VirtualTabsLayout) tabsContainer).notifyTabStylesChanged();
+		}
+
+		if (metrics != null) {
+			metrics.record(TabStripMetrics.OPERATION_UPDATE_TAB_STYLES, startTime);
+		}
+	}
+
+	private void updateTabStyle(View v, boolean updateBackground) {
+
+		if (updateBackground) {
+			v.setBackgroundResource(tabBackgroundResId);
+		}
+		v.setPadding(tabPadding, 0, tabPadding, 0);
+
+		if (v instanceof TabTextView) {
+
+			TabTextView tab = (TabTextView) v;
+			tab.beginBatchUpdate();
+			tab.setTextStyle(getTabTextStyle());
+			if (tabTextColor != null) {
+				tab.setTextColor(tabTextColor);
+			}
+
+			tab.setAllCaps(textAllCaps);
+			tab.setEllipsize(tabEllipsize);
+			tab.setAutoSizeText(autoSizeText, autoSizeMinTextSize);
+			tab.endBatchUpdate();
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private void applyFlatTabStyle(FlatTabsLayout layout, boolean updateBackground) {
+		if (updateBackground) {
+			layout.setTabBackground((tabBackgroundResId != 0) ? getResources().getDrawable(tabBackgroundResId) : null);
+		}
+		layout.setTabPadding(tabPadding);
+		layout.setTextStyle(getTabTextStyle());
+		layout.setTextColor(tabTextColor);
+		layout.setAllCaps(textAllCaps);
+		layout.setEllipsize(tabEllipsize);
+		layout.setAutoSizeText(autoSizeText, autoSizeMinTextSize, autoSizeUniform);
+	}
+
+	private TabTextStyle getTabTextStyle() {
+		final TabTextStyle style = tabTextStyle;
+
+		// the typeface is resolved once per style, not once per tab
+		if (style == null || style.getTextSize() != tabTextSize || !style.hasTypeface(tabTypeface, tabTypefaceStyle)) {
+			tabTextStyle = new TabTextStyle(getResources().getDisplayMetrics().density, tabTextSize, tabTypeface, tabTypefaceStyle);
+		}
+		return tabTextStyle;
+	}
+
+	private boolean hasTabBounds(int position) {
+		return (position >= 0 && position < tabEdgeCount && position < tabCount);
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		final long startTime = (metrics != null) ? metrics.startTiming() : 0;
+
+		super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+
+		if (metrics != null) {
+			metrics.record(TabStripMetrics.OPERATION_MEASURE, startTime);
+		}
+	}
+
+	@Override
+	protected void onLayout(boolean changed, int l, int t, int r, int b) {
+		final long startTime = (metrics != null) ? metrics.startTiming() : 0;
+
+		super.onLayout(changed, l, t, r, b);
+
+		updateTabEdges();
+		updateUniformTitleTextSize();
+
+		if (!isPreMeasuring() && !dataSetChangePending) {
+			// the tabs have been measured with the pre-measured widths
+			releaseMeasureCacheReservation();
+		}
+
+		if (scrollToCurrentItemPending && pager != null) {
+			scrollToCurrentItem();
+			updateLazyTitleWindow();
+
+			// the titles resolved and the virtualized tabs measured around the new scroll position
+			// can change the widths of the tabs, scroll again in the layout pass which applies them
+			scrollToCurrentItemPending = tabsContainer.isLayoutRequested();
+			if (!scrollToCurrentItemPending) {
+				restoredState = null;
+			}
+		} else if (lazyTitleWindowFirst < 0) {
+			// the tab edges are known now, resolve the visible titles before the first frame is drawn
+			updateLazyTitleWindow();
+		} else {
+			scheduleLazyTitleUpdate();
+		}
+
+		if (metrics != null) {
+			metrics.record(TabStripMetrics.OPERATION_LAYOUT, startTime);
+		}
+	}
+
+	private void updateTabEdges() {
+		if (decorationCacheEnabled) {
+			decorationDrawable.invalidateSelf();
+		}
+
+		if (flatTabs) {
+			final FlatTabsLayout layout = (FlatTabsLayout) tabsContainer;
+			tabLefts = layout.getTabLefts();
+			tabRights = layout.getTabRights();
+			tabEdgeCount = layout.getTabEdgeCount();
+		} else if (virtualizedTabs) {
+			final VirtualTabsLayout layout = (VirtualTabsLayout) tabsContainer;
+			tabLefts = layout.getTabLefts();
+			tabRights = layout.getTabRights();
+			tabEdgeCount = layout.getTabEdgeCount();
+		} else {
+			final int n = tabsContainer.getChildCount();
+
+			if (tabLefts.length < n) {
+				tabLefts = new int[n];
+				tabRights = new int[n];
+			}
+
+			for (int i = 0; i < n; i++) {
+				final View tab = tabsContainer.getChildAt(i);
+				tabLefts[i] = tab.getLeft();
+				tabRights[i] = tab.getRight();
+			}
+
+			tabEdgeCount = n;
+		}
+	}
+
+	/**
+	 * Draws all text tabs with the size of the smallest auto-sized title. The tabs have fitted
+	 * their titles in their own layout pass, which is part of the one of the strip.
+	 */
+	private void updateUniformTitleTextSize() {
+		// flat tabs size their titles themselves, virtualized tabs only have views for some of the tabs
+		if (flatTabs || virtualizedTabs || !autoSizeText) {
+			return;
+		}
+
+		final int n = tabsContainer.getChildCount();
+		float uniformSize = Float.MAX_VALUE;
+
+		if (autoSizeUniform) {
+			for (int i = 0; i < n; i++) {
+				final View tab = tabsContainer.getChildAt(i);
+				if (tab instanceof TabTextView) {
+					uniformSize = Math.min(uniformSize, ((TabTextView) tab).getFittedTextSize());
+				}
+			}
+		}
+
+		for (int i = 0; i < n; i++) {
+			final View tab = tabsContainer.getChildAt(i);
+			if (tab instanceof TabTextView) {
+				((TabTextView) tab).setCommonTextSize(autoSizeUniform ? uniformSize : 0);
+			}
+		}
+	}
+
+	private int findTabAt(int x) {
+		return TabStripGeometry.findTabAt(tabRights, Math.min(tabEdgeCount, tabCount), x);
+	}
+
+	private static int getTabPosition(View tab) {
+		final Object tag = tab.getTag(R.id.psts_tab_position);
+		return (tag instanceof TabTag) ? ((TabTag) tag).position : -1;
+	}
+
+	private static void setTabPosition(View tab, int position) {
+		getTabTag(tab).position = position;
+	}
+
+	private static int getTabViewType(View tab) {
+		return getTabTag(tab).viewType;
+	}
+
+	private static TabTag getTabTag(View tab) {
+		// a mutable holder, so rebinding recycled tabs while scrolling does not box the position
+		TabTag tag = (TabTag) tab.getTag(R.id.psts_tab_position);
+		if (tag == null) {
+			tag = new TabTag();
+			tab.setTag(R.id.psts_tab_position, tag);
+		}
+		return tag;
+	}
+
+	private static final class TabTag {
+		int position = -1;
+		int viewType;
+	}
+
+	private View getTabView(int position) {
+		if (flatTabs) {
+			// the tabs do not have views
+			return null;
+		} else if (virtualizedTabs) {
+			return ((VirtualTabsLayout) tabsContainer).getTabView(position);
+		} else {
+			return (position >= 0 && position < tabsContainer.getChildCount()) ? tabsContainer.getChildAt(position) : null;
+		}
+	}
+
+	private void updateTabPositionTags(int start, int end) {
+		// only needed for the non-virtualized container, the virtualized one rebinds its views
+		for (int i = start; i < end; i++) {
+			setTabPosition(tabsContainer.getChildAt(i), i);
+		}
+	}
+
+	/**
+	 * Positions the strip at the current item of the pager. Called from the layout pass,
+	 * so the first frame after a data set change or a restore is drawn at the right place.
+	 */
+	private void scrollToCurrentItem() {
+		final SavedState restored = restoredState;
+
+		layoutFinished = true;
+		currentPosition = pager.getCurrentItem();
+
+		if (restored != null && restored.currentPosition == currentPosition
+				&& restored.measuredTabCount == getMeasuredTabCount() && restored.tabWidthsHash == getTabWidthsHash()) {
+			// same tabs as before, keep the exact offset the user has left the strip at
+			scrollTo(restored.scrollX, 0);
+			lastScrollX = getScrollX();
+		} else {
+			scrollToChild(currentPosition, 0, false);
+		}
+
+		updateSelection(currentPosition);
+	}
+
+	private int getMeasuredTabCount() {
+		return Math.min(tabEdgeCount, tabCount);
+	}
+
+	private int getTabWidthsHash() {
+		final int n = getMeasuredTabCount();
+		int hash = 1;
+
+		for (int i = 0; i < n; i++) {
+			hash = 31 * hash + (tabRights[i] - tabLefts[i]);
+		}
+
+		return hash;
+	}
+
+	private void scrollToChild(int position, float positionOffset, boolean smoothly) {
+		if (metrics != null) {
+			final long startTime = metrics.startTiming();
+			performScrollToChild(position, positionOffset, smoothly);
+			metrics.record(TabStripMetrics.OPERATION_SCROLL_TO_CHILD, startTime);
+		} else {
+			performScrollToChild(position, positionOffset, smoothly);
+		}
+	}
+
+	private void performScrollToChild(int position, float positionOffset, boolean smoothly) {
+		if (tabCount == 0) {
+			return;
+		}
+
+		if (!hasTabBounds(position)) {
+			return;
+		}
+
+		final int newScrollX = TabStripGeometry.computeScrollX(
+				tabLefts, tabRights, Math.min(tabEdgeCount, tabCount), position, positionOffset,
+				getWidth(), scrollToCenter, scrollOffset);
+
+		if (newScrollX != lastScrollX) {
+			lastScrollX = newScrollX;
+
+			if (smoothly && layoutFinished) {
+				smoothScrollTo(newScrollX, 0);
+			} else {
+				scrollTo(newScrollX, 0);
+			}
+		}
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+
+		if (isInEditMode() || tabCount == 0) {
+			return;
+		}
+
+		final long startTime = (metrics != null) ? metrics.startTiming() : 0;
+
+		// draw indicator line
+		if (!isTransparent(indicatorColor) && indicatorHeight > 0) {
+			final Rect rect = indicatorRect;
+
+			computeIndicatorRect(rect);
+
+			if (rect.left != rect.right) {
+				rectPaint.setColor(indicatorColor);
+				canvas.drawRect(rect, rectPaint);
+				drawnIndicatorRect.set(rect);
+			} else {
+				drawnIndicatorRect.setEmpty();
+			}
+		}
+
+		if (!decorationCacheEnabled) {
+			// only the dividers inside of the visible scroll window
+			final int windowLeft = getScrollX();
+			drawDecorations(canvas, windowLeft, windowLeft + getWidth());
+		}
+
+		if (metrics != null) {
+			metrics.record(TabStripMetrics.OPERATION_DRAW, startTime);
+		}
+	}
+
+	private void computeIndicatorRect(Rect outRect) {
+		final int height = getHeight();
+		int left;
+		int right;
+		int top = 0;
+
+		if (!isScrollingByDrag) {
+			// default: line below selected tab
+			final int selectedPosition = pager.getCurrentItem();
+			if (hasTabBounds(selectedPosition)) {
+				left = tabLefts[selectedPosition];
+				right = tabRights[selectedPosition];
+			} else {
+				left = 0;
+				right = 0;
+			}
+		} else {
+			// if there is an offset, start interpolating left and right coordinates between current and next tab
+			if (hasTabBounds(currentPosition)) {
+				final int edgeCount = Math.min(tabEdgeCount, tabCount);
+				left = TabStripGeometry.interpolateTabEdge(tabLefts, edgeCount, currentPosition, currentPositionOffset);
+				right = TabStripGeometry.interpolateTabEdge(tabRights, edgeCount, currentPosition, currentPositionOffset);
+			} else {
+				left = 0;
+				right = 0;
+			}
+		}
+
+		if (indicatorPosition == INDICATOR_POSITION_BOTTOM) {
+			top = height - indicatorHeight;
+		} else if (indicatorPosition == INDICATOR_POSITION_TOP) {
+			top = 0;
+		}
+
+		outRect.set(left, top, right, top + indicatorHeight);
+	}
+
+	private void drawDecorations(Canvas canvas, int windowLeft, int windowRight) {
+		final int height = getHeight();
+
+		// draw underline
+		if (!isTransparent(underlineColor) && underlineHeight > 0) {
+			rectPaint.setColor(underlineColor);
+			canvas.drawRect(0, height - underlineHeight, tabsContainer.getWidth(), height, rectPaint);
+		}
+
+		// draw overline
+		if (!isTransparent(overlineColor) && overlineHeight > 0) {
+			rectPaint.setColor(overlineColor);
+			canvas.drawRect(0, 0, tabsContainer.getWidth(), overlineHeight, rectPaint);
+		}
+
+		// draw divider
+		if (!isTransparent(dividerColor)) {
+			dividerPaint.setColor(dividerColor);
+
+			final int lastDivider = Math.min(tabEdgeCount, tabCount) - 1;
+
+			for (int i = findTabAt(windowLeft); i < lastDivider; i++) {
+				final int x = tabRights[i];
+				if (x > windowRight) {
+					break;
+				}
+				canvas.drawLine(x, dividerPadding, x, height - dividerPadding, dividerPaint);
+			}
+		}
+	}
+
+	/**
+	 * Invalidates the area of the indicator only, if the static decorations are cached.
+	 */
+	private void invalidateIndicator() {
+		if (!decorationCacheEnabled) {
+			invalidate();
+			return;
+		}
+
+		final Rect rect = indicatorRect;
+		computeIndicatorRect(rect);
+
+		if (rect.equals(drawnIndicatorRect)) {
+			return;
+		}
+
+		// the union of the old and the new indicator rect
+		if (!drawnIndicatorRect.isEmpty()) {
+			rect.union(drawnIndicatorRect);
+		}
+		invalidate(rect.left, rect.top, rect.right, rect.bottom);
+	}
+
+	private void invalidateDecorations() {
+		invalidate();
+
+		if (decorationCacheEnabled) {
+			decorationDrawable.invalidateSelf();
+		}
+	}
+
+	/**
+	 * Draws the underline, the overline and the dividers as the background of the
+	 * tabs container, so they are recorded once per layout or style change
+	 * instead of being redrawn on every frame of a drag.
+	 */
+	private class DecorationDrawable extends Drawable {
+
+		private final Rect clipBounds = new Rect();
+
+		@Override
+		public void draw(Canvas canvas) {
+			if (isInEditMode() || tabCount == 0) {
+				return;
+			}
+
+			// the decorations are positioned in the coordinates of the strip
+			final int dx = tabsContainer.getLeft();
+			final int dy = tabsContainer.getTop();
+			final int saveCount = canvas.save();
+
+			canvas.translate(-dx, -dy);
+			canvas.getClipBounds(clipBounds);
+			drawDecorations(canvas, clipBounds.left, clipBounds.right);
+
+			canvas.restoreToCount(saveCount);
+		}
+
+		@Override
+		public void setAlpha(int alpha) {
+		}
+
+		@Override
+		public void setColorFilter(ColorFilter cf) {
+		}
+
+		@Override
+		public int getOpacity() {
+			return PixelFormat.TRANSLUCENT;
+		}
+	}
+
+	private class PageListener implements OnPageChangeListener {
+
+		@Override
+		public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+
+			pageScrolledEventCount++;
+
+			if (scrollCoalescingEnabled) {
+				// only keep the latest offset, it is applied once per frame
+				pendingScrollPosition = position;
+				pendingScrollPositionOffset = positionOffset;
+
+				if (!pageScrollFramePending) {
+					pageScrollFramePending = true;
+					ViewCompat.postOnAnimation(PagerSlidingTabStrip.this, pageScrollFrameRunnable);
+				}
+			} else {
+				applyPageScroll(position, positionOffset);
+			}
+
+			if (delegatePageListener != null) {
+				delegatePageListener.onPageScrolled(position, positionOffset, positionOffsetPixels);
+			}
+
+			final OnPageChangeListener[] listeners = pageListeners;
+			for (int i = 0; i < listeners.length; i++) {
+				listeners[i].onPageScrolled(position, positionOffset, positionOffsetPixels);
+			}
+		}
+
+		@Override
+		public void onPageScrollStateChanged(int state) {
+
+			flushPendingPageScroll();
+
+			switch (state) {
+				case ViewPager.SCROLL_STATE_IDLE:
+					scrollToChild(pager.getCurrentItem(), 0, false);
+					isScrollingByDrag = false;
+					lastScrollX = -1;
+					break;
+				case ViewPager.SCROLL_STATE_DRAGGING:
+					isScrollingByDrag = true;
+					break;
+				case ViewPager.SCROLL_STATE_SETTLING:
+					break;
+			}
 
-			if (pager.getAdapter() instanceof IconTabProvider) {
-				addIconTab(i, ((IconTabProvider) pager.getAdapter()).getPageIconResId(i));
-			} else {
-				addTextTab(i, pager.getAdapter().getPageTitle(i).toString());
+			if (delegatePageListener != null) {
+				delegatePageListener.onPageScrollStateChanged(state);
 			}
 
+			final OnPageChangeListener[] listeners = pageListeners;
+			for (int i = 0; i < listeners.length; i++) {
+				listeners[i].onPageScrollStateChanged(state);
+			}
 		}
 
-		updateTabStyles();
-
-		getViewTreeObserver().addOnGlobalLayoutListener(new OnGlobalLayoutListener() {
-			@Override
-			public void onGlobalLayout() {
-				ViewTreeObserverCompat.removeOnGlobalLayoutListener(getViewTreeObserver(), this);
+		@Override
+		public void onPageSelected(int position) {
+			flushPendingPageScroll();
 
-				layoutFinished = true;
-				currentPosition = pager.getCurrentItem();
-				scrollToChild(currentPosition, 0, false);
-				updateSelection(currentPosition);
+			if (!isScrollingByDrag) {
+				scrollToChild(position, 0, true);
 			}
-		});
-
-	}
 
-	private void addTextTab(final int position, String title) {
+			updateSelection(position);
+			
+			if (delegatePageListener != null) {
+				delegatePageListener.onPageSelected(position);
+			}
 
-		TabTextView tab = new TabTextView(getContext());
-		tab.setText(title);
-		tab.setGravity(Gravity.CENTER);
+			final OnPageChangeListener[] listeners = pageListeners;
+			for (int i = 0; i < listeners.length; i++) {
+				listeners[i].onPageSelected(position);
+			}
+		}
 
-		addTab(position, tab);
 	}
+	
+	private void applyPageScroll(int position, float positionOffset) {
+		pageScrollFrameCount++;
 
-	private void addIconTab(final int position, int resId) {
+		currentPosition = position;
+		currentPositionOffset = positionOffset;
 
-		ImageButton tab = new ImageButton(getContext());
-		tab.setImageResource(resId);
+		if (isScrollingByDrag) {
+			scrollToChild(position, positionOffset, false);
+		}
 
-		addTab(position, tab);
+		invalidateIndicator();
+	}
 
+	private void flushPendingPageScroll() {
+		if (pageScrollFramePending) {
+			removeCallbacks(pageScrollFrameRunnable);
+			pageScrollFramePending = false;
+			applyPageScroll(pendingScrollPosition, pendingScrollPositionOffset);
+		}
 	}
 
-	private void addTab(final int position, View tab) {
-		tab.setFocusable(true);
-		tab.setOnClickListener(mTabOnClickListener);
+	/**
+	 * Rebuilds the tabs now if a coalesced rebuild is pending.
+	 *
+	 * @return true if the tabs have been rebuilt, they already reflect the current adapter then
+	 */
+	private boolean flushPendingDataSetChange() {
+		if (!dataSetChangePending) {
+			return false;
+		}
 
-		tabsContainer.addView(tab, position, shouldExpand ? expandedTabLayoutParams : defaultTabLayoutParams);
+		applyDataSetChangeNow();
+		return true;
 	}
 
-	private void updateTabStyles() {
+	private void cancelPendingDataSetChange() {
+		if (dataSetChangePending) {
+			removeCallbacks(dataSetChangeRunnable);
+			dataSetChangePending = false;
+		}
+	}
 
-		for (int i = 0; i < tabCount; i++) {
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
 
-			View v = tabsContainer.getChildAt(i);
+		if (dataSetChangePending) {
+			// put off while the strip was detached, the tabs must match the adapter before they are laid out
+			applyDataSetChangeNow();
+		}
+	}
 
-			v.setBackgroundResource(tabBackgroundResId);
-			v.setPadding(tabPadding, 0, tabPadding, 0);
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
 
-			if (v instanceof TabTextView) {
+		if (dataSetChangePending) {
+			// keep it pending, many strips are not attached again and do not need the rebuild at all
+			removeCallbacks(dataSetChangeRunnable);
+		}
+		releaseMeasureCacheReservation();
 
-				TabTextView tab = (TabTextView) v;
-				tab.setTextSize(TypedValue.COMPLEX_UNIT_PX, tabTextSize);
-				tab.setTypeface(tabTypeface, tabTypefaceStyle);
-				if (tabTextColor != null) {
-					tab.setTextColor(tabTextColor);
-				}
+		if (pageScrollFramePending) {
+			removeCallbacks(pageScrollFrameRunnable);
+			pageScrollFramePending = false;
+		}
 
-				tab.setAllCaps(textAllCaps);
-			}
+		if (lazyTitleUpdatePending) {
+			removeCallbacks(lazyTitleUpdateRunnable);
+			lazyTitleUpdatePending = false;
 		}
 	}
 
-	private void scrollToChild(int position, float positionOffset, boolean smoothly) {
-		if (tabCount == 0) {
-			return;
-		}
+	/**
+	 * Starts collecting metrics of the expensive operations of this strip into the
+	 * given instance. Pass null to stop collecting, which removes all the overhead.
+	 */
+	public void setMetrics(TabStripMetrics metrics) {
+		this.metrics = metrics;
+	}
 
-		final View currentTab = tabsContainer.getChildAt(position);
+	public TabStripMetrics getMetrics() {
+		return metrics;
+	}
 
-		if (currentTab == null) {
+	/**
+	 * If enabled, the strip only stores the latest offset delivered by onPageScrolled()
+	 * and applies it to the scroll position and the indicator once per animation frame.
+	 * The delegate listener is still called for every event.
+	 */
+	public void setScrollCoalescingEnabled(boolean enabled) {
+		if (scrollCoalescingEnabled == enabled) {
 			return;
 		}
 
-		int newScrollX = currentTab.getLeft() + (int)(currentTab.getWidth() * positionOffset);
-
-		if (scrollToCenter) {
-			final int nextPosition = position + 1;
-			final View nextTab = (nextPosition < tabCount) ? tabsContainer.getChildAt(nextPosition) : null;
-			final int parentWidth = getWidth();
-			final int width1 = currentTab.getWidth();
-			final int width2 = (nextTab != null) ? nextTab.getWidth() : width1;
-			final float interpolatedWidth = lerp((float) width1, (float) width2, positionOffset);
-
-			newScrollX -= (int)((parentWidth - interpolatedWidth) * 0.5f);
-		} else {
-			newScrollX -= scrollOffset;
+		if (!enabled) {
+			flushPendingPageScroll();
 		}
+		scrollCoalescingEnabled = enabled;
+	}
 
-		newScrollX = Math.max(0, newScrollX);
+	public boolean isScrollCoalescingEnabled() {
+		return scrollCoalescingEnabled;
+	}
 
-		if (newScrollX != lastScrollX) {
-			lastScrollX = newScrollX;
+	/**
+	 * If enabled, notifyDataSetChanged() only schedules a rebuild of the tabs, which runs at
+	 * the start of the next animation frame, before its layout. All the calls until then,
+	 * e.g. after several adapter mutations, result in a single rebuild.
+	 * The granular notify methods and the badge setters apply a pending rebuild first;
+	 * a granular change is already part of that rebuild, so it is not applied again.
+	 */
+	public void setDataSetChangeCoalescingEnabled(boolean enabled) {
+		if (dataSetChangeCoalescingEnabled == enabled) {
+			return;
+		}
 
-			if (smoothly && layoutFinished) {
-				smoothScrollTo(newScrollX, 0);
-			} else {
-				scrollTo(newScrollX, 0);
-			}
+		if (!enabled) {
+			flushPendingDataSetChange();
 		}
+		dataSetChangeCoalescingEnabled = enabled;
 	}
 
-	@Override
-	protected void onDraw(Canvas canvas) {
-		super.onDraw(canvas);
+	public boolean isDataSetChangeCoalescingEnabled() {
+		return dataSetChangeCoalescingEnabled;
+	}
 
-		if (isInEditMode() || tabCount == 0) {
-			return;
-		}
+	/**
+	 * Returns the number of notifyDataSetChanged() calls which were merged into a rebuild
+	 * that was already scheduled.
+	 */
+	public int getCollapsedDataSetChangeCount() {
+		return collapsedDataSetChangeCount;
+	}
 
-		final int height = getHeight();
+	/**
+	 * Returns the number of onPageScrolled() events received from the pager.
+	 */
+	public int getPageScrolledEventCount() {
+		return pageScrolledEventCount;
+	}
 
-		// draw indicator line
-		if (!isTransparent(indicatorColor) && indicatorHeight > 0) {
-			float left;
-			float right;
-			float top = 0;
+	/**
+	 * Returns how many times a page scroll offset has been applied to the strip.
+	 * Without scroll coalescing it equals {@link #getPageScrolledEventCount()}.
+	 */
+	public int getPageScrollFrameCount() {
+		return pageScrollFrameCount;
+	}
 
-			if (!isScrollingByDrag) {
-				// default: line below selected tab
-				final int selectedPosition = pager.getCurrentItem();
-				final View currentTab = tabsContainer.getChildAt(selectedPosition);
-				if (currentTab != null) {
-					left = currentTab.getLeft();
-					right = currentTab.getRight();
-				} else {
-					left = 0;
-					right = 0;
-				}
-			} else {
-				// if there is an offset, start interpolating left and right coordinates between current and next tab
-				final int nextPosition = currentPosition + 1;
-				final View currentTab = tabsContainer.getChildAt(currentPosition);
-				final View nextTab = (nextPosition < tabCount) ? tabsContainer.getChildAt(nextPosition) : null;
-				final float currentTabLeft = currentTab.getLeft();
-				final float currentTabRight = currentTab.getRight();
-				final float nextTabLeft = (nextTab != null) ? nextTab.getLeft() : currentTabLeft;
-				final float nextTabRight = (nextTab != null) ? nextTab.getRight() : currentTabRight;
+	private class VirtualTabViewAdapter implements VirtualTabsLayout.TabViewAdapter {
 
-				left = (int) lerp((float) currentTabLeft, (float) nextTabLeft, currentPositionOffset);
-				right = (int) lerp((float) currentTabRight, (float) nextTabRight, currentPositionOffset);
-			}
+		@Override
+		public int getTabCount() {
+			return tabCount;
+		}
 
-			if (indicatorPosition == INDICATOR_POSITION_BOTTOM) {
-				top = height - indicatorHeight;
-			} else if (indicatorPosition == INDICATOR_POSITION_TOP) {
-				top = 0;
-			}
+		@Override
+		public int getTabViewType(int position) {
+			return PagerSlidingTabStrip.this.getTabViewType(position);
+		}
 
-			if (left != right) {
-				rectPaint.setColor(indicatorColor);
-				canvas.drawRect(left, top, right, top + indicatorHeight, rectPaint);
-			}
+		@Override
+		public int getViewType(View tab) {
+			return PagerSlidingTabStrip.getTabViewType(tab);
 		}
 
-		// draw underline
-		if (!isTransparent(underlineColor) && underlineHeight > 0) {
-			rectPaint.setColor(underlineColor);
-			canvas.drawRect(0, height - underlineHeight, tabsContainer.getWidth(), height, rectPaint);
+		@Override
+		public View createTabView(int position) {
+			View tab = createTab(getTabViewType(position));
+			updateTabStyle(tab, true);
+			return tab;
 		}
 
-		// draw overline
-		if (!isTransparent(overlineColor) && overlineHeight > 0) {
-			rectPaint.setColor(overlineColor);
-			canvas.drawRect(0, 0, tabsContainer.getWidth(), overlineHeight, rectPaint);
+		@Override
+		public void bindTabView(View tab, int position) {
+			bindTab(tab, position);
+			setTabViewSelected(tab, position == selectedPosition);
 		}
 
-		// draw divider
-		if (!isTransparent(dividerColor)) {
-			dividerPaint.setColor(dividerColor);
-			for (int i = 0; i < tabCount - 1; i++) {
-				View tab = tabsContainer.getChildAt(i);
-				canvas.drawLine(tab.getRight(), dividerPadding, tab.getRight(), height - dividerPadding, dividerPaint);
+		@Override
+		public void recycleTabView(View tab) {
+			if (pager.getAdapter() instanceof CustomTabProvider) {
+				((CustomTabProvider) pager.getAdapter()).recycleTabView(tab);
 			}
 		}
-	}
-
-	private class PageListener implements OnPageChangeListener {
 
 		@Override
-		public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
-
-			currentPosition = position;
-			currentPositionOffset = positionOffset;
-
-			if (isScrollingByDrag) {
-				scrollToChild(position, positionOffset, false);
+		public void measureTab(int position, int heightMeasureSpec, int[] outSize) {
+			final int viewType = getTabViewType(position);
+			View measuringTab = measuringTabs.get(viewType);
+
+			if (measuringTab == null) {
+				measuringTab = createTabView(position);
+				measuringTab.setLayoutParams(defaultTabLayoutParams);
+				measuringTabs.put(viewType, measuringTab);
 			}
 
-			invalidate();
+			bindTab(measuringTab, position);
+			measuringTab.measure(MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED), heightMeasureSpec);
 
-			if (delegatePageListener != null) {
-				delegatePageListener.onPageScrolled(position, positionOffset, positionOffsetPixels);
-			}
+			outSize[0] = measuringTab.getMeasuredWidth();
+			outSize[1] = measuringTab.getMeasuredHeight();
 		}
+	}
+
+	private class FlatTabAdapter implements FlatTabsLayout.TabAdapter {
 
 		@Override
-		public void onPageScrollStateChanged(int state) {
+		public int getTabCount() {
+			return (pager != null) ? tabCount : 0;
+		}
 
-			switch (state) {
-				case ViewPager.SCROLL_STATE_IDLE:
-					scrollToChild(pager.getCurrentItem(), 0, false);
-					isScrollingByDrag = false;
-					lastScrollX = -1;
-					break;
-				case ViewPager.SCROLL_STATE_DRAGGING:
-					isScrollingByDrag = true;
-					break;
-				case ViewPager.SCROLL_STATE_SETTLING:
-					break;
-			}
+		@Override
+		public CharSequence getTabTitle(int position) {
+			return PagerSlidingTabStrip.this.getTabTitle(position);
+		}
 
-			if (delegatePageListener != null) {
-				delegatePageListener.onPageScrollStateChanged(state);
-			}
+		@Override
+		public CharSequence getTabBadge(int position) {
+			return tabBadges.get(position);
 		}
 
 		@Override
-		public void onPageSelected(int position) {
-			if (!isScrollingByDrag) {
-				scrollToChild(position, 0, true);
-			}
+		public void onTabClick(int position) {
+			// the layout stands in for the tab view
+			performTabClick(tabsContainer, position);
+		}
+	}
 
-			updateSelection(position);
-			
-			if (delegatePageListener != null) {
-				delegatePageListener.onPageSelected(position);
-			}
+	@Override
+	protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+		super.onScrollChanged(l, t, oldl, oldt);
+
+		if (virtualizedTabs) {
+			((VirtualTabsLayout) tabsContainer).updateAttachedTabs();
 		}
 
+		scheduleLazyTitleUpdate();
 	}
-	
+
 	public void updateSelection(int position) {
-		for (int i = 0; i < tabCount; ++i) {
-			View tv = tabsContainer.getChildAt(i);
-			tv.setSelected(i == position);
+		final int oldPosition = selectedPosition;
+		selectedPosition = position;
+
+		if (flatTabs) {
+			tabSelectedStateChangeCount += ((FlatTabsLayout) tabsContainer).setSelectedPosition(position);
+			return;
+		}
+
+		// only the previously selected and the newly selected tab have to be updated
+		if (oldPosition != position) {
+			setTabSelected(oldPosition, false);
+		}
+		setTabSelected(position, true);
+	}
+
+	private void setTabSelected(int position, boolean selected) {
+		final View tab = getTabView(position);
+
+		if (tab != null) {
+			setTabViewSelected(tab, selected);
+		}
+	}
+
+	/**
+	 * Changes the selected state of a tab view. All the changes go through here, so they are counted.
+	 */
+	private void setTabViewSelected(View tab, boolean selected) {
+		if (tab.isSelected() != selected) {
+			tab.setSelected(selected);
+			tabSelectedStateChangeCount++;
 		}
 	}
 
+	/**
+	 * Returns how many times the selected state of a tab view has been changed, by page
+	 * selections as well as by binding tabs. Intended for debugging and tests, a page change
+	 * should not increase it by more than two.
+	 */
+	public int getTabSelectedStateChangeCount() {
+		return tabSelectedStateChangeCount;
+	}
+
 	public void setIndicatorColor(int indicatorColor) {
 		this.indicatorColor = indicatorColor;
 		invalidate();
@@ -483,12 +2008,12 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
 	public void setUnderlineColor(int underlineColor) {
 		this.underlineColor = underlineColor;
-		invalidate();
+		invalidateDecorations();
 	}
 
 	public void setUnderlineColorResource(int resId) {
 		this.underlineColor = getResources().getColor(resId);
-		invalidate();
+		invalidateDecorations();
 	}
 
 	public int getUnderlineColor() {
@@ -497,12 +2022,12 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
 	public void setOverineColor(int overlineColor) {
 		this.overlineColor = overlineColor;
-		invalidate();
+		invalidateDecorations();
 	}
 
 	public void setOverlineColorResource(int resId) {
 		this.overlineColor = getResources().getColor(resId);
-		invalidate();
+		invalidateDecorations();
 	}
 
 	public int getOverlineColor() {
@@ -511,12 +2036,12 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
 	public void setDividerColor(int dividerColor) {
 		this.dividerColor = dividerColor;
-		invalidate();
+		invalidateDecorations();
 	}
 
 	public void setDividerColorResource(int resId) {
 		this.dividerColor = getResources().getColor(resId);
-		invalidate();
+		invalidateDecorations();
 	}
 
 	public int getDividerColor() {
@@ -525,7 +2050,7 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
 	public void setUnderlineHeight(int underlineHeightPx) {
 		this.underlineHeight = underlineHeightPx;
-		invalidate();
+		invalidateDecorations();
 	}
 
 	public int getUnderlineHeight() {
@@ -535,7 +2060,7 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
 	public void setOverlineHeight(int overlineHeightPx) {
 		this.overlineHeight = overlineHeightPx;
-		invalidate();
+		invalidateDecorations();
 	}
 
 	public int getOverlineHeight() {
@@ -544,7 +2069,7 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
 	public void setDividerPadding(int dividerPaddingPx) {
 		this.dividerPadding = dividerPaddingPx;
-		invalidate();
+		invalidateDecorations();
 	}
 
 	public int getDividerPadding() {
@@ -562,6 +2087,11 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
 	public void setShouldExpand(boolean shouldExpand) {
 		this.shouldExpand = shouldExpand;
+		if (flatTabs) {
+			((FlatTabsLayout) tabsContainer).setShouldExpand(shouldExpand);
+		} else if (virtualizedTabs) {
+			((VirtualTabsLayout) tabsContainer).setShouldExpand(shouldExpand);
+		}
 		requestLayout();
 	}
 
@@ -569,6 +2099,117 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 		return shouldExpand;
 	}
 
+	/**
+	 * Enables virtualized tabs. Only the tabs inside of the visible area (plus a small margin)
+	 * have views, and these views are recycled while the strip scrolls. Only these tabs are
+	 * measured as well, the other ones have an estimated width until they are scrolled into view.
+	 * Recommended for adapters with hundreds of pages.
+	 */
+	public void setVirtualizedTabs(boolean virtualizedTabs) {
+		if (this.virtualizedTabs == virtualizedTabs) {
+			return;
+		}
+
+		this.virtualizedTabs = virtualizedTabs;
+
+		removeView(tabsContainer);
+		tabsContainer = createTabsContainer();
+		addView(tabsContainer);
+
+		if (pager != null) {
+			notifyDataSetChanged();
+		}
+	}
+
+	public boolean isVirtualizedTabs() {
+		return virtualizedTabs;
+	}
+
+	/**
+	 * Enables flat tabs. The strip measures and draws the titles and badges of all tabs
+	 * itself, without a view per tab, and hit-tests touches against the tab edges.
+	 * Only supports text tabs, neither an {@link IconTabProvider} nor a {@link CustomTabProvider}.
+	 * Takes precedence over {@link #setVirtualizedTabs(boolean)}.
+	 * <p/>
+	 * The tabs are not exposed to accessibility services and cannot be focused with a D-pad
+	 * or a keyboard, only touched.
+	 */
+	public void setFlatTabs(boolean flatTabs) {
+		if (this.flatTabs == flatTabs) {
+			return;
+		}
+
+		this.flatTabs = flatTabs;
+
+		removeView(tabsContainer);
+		tabsContainer = createTabsContainer();
+		addView(tabsContainer);
+
+		if (pager != null) {
+			notifyDataSetChanged();
+		}
+	}
+
+	public boolean isFlatTabs() {
+		return flatTabs;
+	}
+
+	/**
+	 * Caches the static decorations (underline, overline and dividers), so each frame
+	 * of a drag only redraws the indicator and invalidates the area it moved over.
+	 */
+	@SuppressWarnings("deprecation")
+	public void setDecorationCacheEnabled(boolean enabled) {
+		if (decorationCacheEnabled == enabled) {
+			return;
+		}
+
+		decorationCacheEnabled = enabled;
+		tabsContainer.setBackgroundDrawable(enabled ? decorationDrawable : null);
+		invalidate();
+	}
+
+	public boolean isDecorationCacheEnabled() {
+		return decorationCacheEnabled;
+	}
+
+	/**
+	 * Sets how many tabs beyond the visible area get their titles resolved,
+	 * if the adapter is a {@link LazyTitleProvider}.
+	 */
+	public void setLazyTitleDistance(int tabCount) {
+		if (lazyTitleDistance != tabCount) {
+			lazyTitleDistance = tabCount;
+			lazyTitleWindowFirst = -1;
+			lazyTitleWindowLast = -1;
+			scheduleLazyTitleUpdate();
+		}
+	}
+
+	public int getLazyTitleDistance() {
+		return lazyTitleDistance;
+	}
+
+	/**
+	 * Sets the width of the tabs whose titles have not been resolved yet,
+	 * if the adapter is a {@link LazyTitleProvider}.
+	 */
+	public void setLazyTitlePlaceholderWidth(int widthPx) {
+		if (lazyTitlePlaceholderWidth != widthPx) {
+			lazyTitlePlaceholderWidth = widthPx;
+			if (flatTabs) {
+				((FlatTabsLayout) tabsContainer).setPlaceholderWidth(widthPx);
+			}
+			if (hasLazyTitles()) {
+				notifyDataSetChanged();
+			}
+		}
+	}
+
+	public int getLazyTitlePlaceholderWidth() {
+		return lazyTitlePlaceholderWidth;
+	}
+
 	public boolean isTextAllCaps() {
 		return textAllCaps;
 	}
@@ -578,6 +2219,57 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 		updateTabStyles();
 	}
 
+	/**
+	 * Sets where the titles which do not fit into their tabs are ellipsized, e.g. with
+	 * {@link #setShouldExpand(boolean)}. Null lets long titles overflow (the default).
+	 */
+	public void setTabEllipsize(TextUtils.TruncateAt where) {
+		this.tabEllipsize = where;
+		updateTabStyles();
+	}
+
+	public TextUtils.TruncateAt getTabEllipsize() {
+		return tabEllipsize;
+	}
+
+	/**
+	 * Shrinks the titles which do not fit into their tabs, e.g. with {@link #setShouldExpand(boolean)},
+	 * down to the minimum size set by {@link #setAutoSizeMinTextSize(int)}.
+	 */
+	public void setAutoSizeText(boolean enabled) {
+		this.autoSizeText = enabled;
+		updateTabStyles();
+		requestLayout();
+	}
+
+	public boolean isAutoSizeText() {
+		return autoSizeText;
+	}
+
+	public void setAutoSizeMinTextSize(int textSizePx) {
+		this.autoSizeMinTextSize = textSizePx;
+		updateTabStyles();
+		requestLayout();
+	}
+
+	public int getAutoSizeMinTextSize() {
+		return autoSizeMinTextSize;
+	}
+
+	/**
+	 * If enabled, all auto-sized titles are drawn with the size of the smallest one.
+	 * Not supported with virtualized tabs, which only have views for some of the tabs.
+	 */
+	public void setAutoSizeUniform(boolean uniform) {
+		this.autoSizeUniform = uniform;
+		updateTabStyles();
+		requestLayout();
+	}
+
+	public boolean isAutoSizeUniform() {
+		return autoSizeUniform;
+	}
+
 	public void setTextSize(int textSizePx) {
 		this.tabTextSize = textSizePx;
 		updateTabStyles();
@@ -609,6 +2301,8 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
 	public void setTabBackground(int resId) {
 		this.tabBackgroundResId = resId;
+		// the kept and recycled tab views are not restyled by notifyDataSetChanged()
+		updateTabStyles();
 	}
 
 	public int getTabBackground() {
@@ -654,15 +2348,13 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 		}
 	}
 
-	private static float lerp(float a, float b, float proportion) {
-		return (a * (1.0f - proportion)) + (b * proportion);
-	}
-
 	@Override
 	public void onRestoreInstanceState(Parcelable state) {
 		SavedState savedState = (SavedState) state;
 		super.onRestoreInstanceState(savedState.getSuperState());
 		currentPosition = savedState.currentPosition;
+		restoredState = savedState;
+		scrollToCurrentItemPending = true;
 		requestLayout();
 	}
 
@@ -671,30 +2363,41 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 		Parcelable superState = super.onSaveInstanceState();
 		SavedState savedState = new SavedState(superState);
 		savedState.currentPosition = currentPosition;
+		savedState.scrollX = getScrollX();
+		savedState.measuredTabCount = getMeasuredTabCount();
+		savedState.tabWidthsHash = getTabWidthsHash();
 		return savedState;
 	}
 
 	private void handleTabOnClick(View v) {
-		int n = tabsContainer.getChildCount();
+		final int position = getTabPosition(v);
 
-		for (int i = 0; i < n; i++) {
-			if (v == tabsContainer.getChildAt(i)) {
-				if (tabClickListener != null) {
-					if (tabClickListener.onClick(v, i)) {
-						// handled
-						break;
-					}
-				}
+		if (position < 0) {
+			return;
+		}
 
-				// set current page
-				pager.setCurrentItem(i);
-				break;
+		performTabClick(v, position);
+	}
+
+	private void performTabClick(View v, int position) {
+		if (tabClickListener != null) {
+			if (tabClickListener.onClick(v, position)) {
+				// handled
+				return;
 			}
 		}
+
+		// set current page
+		pager.setCurrentItem(position);
 	}
 
 	static class SavedState extends BaseSavedState {
 		int currentPosition;
+		int scrollX;
+		// the offset is only restored if the tabs still have the same widths, e.g. not after a rotation which changes them;
+		// a hash of the widths keeps the state small for strips with many tabs
+		int measuredTabCount;
+		int tabWidthsHash;
 
 		public SavedState(Parcelable superState) {
 			super(superState);
@@ -703,12 +2406,18 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 		private SavedState(Parcel in) {
 			super(in);
 			currentPosition = in.readInt();
+			scrollX = in.readInt();
+			measuredTabCount = in.readInt();
+			tabWidthsHash = in.readInt();
 		}
 
 		@Override
 		public void writeToParcel(Parcel dest, int flags) {
 			super.writeToParcel(dest, flags);
 			dest.writeInt(currentPosition);
+			dest.writeInt(scrollX);
+			dest.writeInt(measuredTabCount);
+			dest.writeInt(tabWidthsHash);
 		}
 
 		public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
+
+/**
+ * Icon drawables keyed by resource id. Every resource is loaded (and decoded) once,
+ * the tabs showing the same icon get drawables which share its ConstantState.
+ */
+class TabIconCache {
+	private final Resources resources;
+	private final SparseArray<Drawable.ConstantState> states = new SparseArray<Drawable.ConstantState>();
+
+	public TabIconCache(Resources resources) {
+		this.resources = resources;
+	}
+
+	/**
+	 * Returns a new drawable for the given resource, which can be used by a single view.
+	 */
+	@SuppressWarnings("deprecation")
+	public Drawable getDrawable(int resId) {
+		final Drawable.ConstantState state = states.get(resId);
+
+		if (state != null) {
+			return state.newDrawable(resources);
+		}
+
+		final Drawable drawable = resources.getDrawable(resId);
+		final Drawable.ConstantState newState = (drawable != null) ? drawable.getConstantState() : null;
+
+		if (newState != null) {
+			states.put(resId, newState);
+		}
+
+		return drawable;
+	}
+
+	public void clear() {
+		states.clear();
+	}
+}
@@ -0,0 +1,159 @@
+package com.astuetz;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+
+/**
+ * Lightweight icon tab which draws a single drawable centered in its padded area,
+ * scaled like an ImageView with {@code FIT_CENTER}.
+ */
+public class TabIconView extends View {
+    @SuppressWarnings("unused")
+    private static final String TAG = "TabIconView";
+
+    private Drawable mDrawable;
+    private int mIconResId;
+
+    public TabIconView(Context context) {
+        super(context);
+    }
+
+    public Drawable getIconDrawable() {
+        return mDrawable;
+    }
+
+    public int getIconResId() {
+        return mIconResId;
+    }
+
+    /**
+     * Sets the icon.
+     *
+     * @param resId    Resource id the drawable has been loaded from, or 0 if unknown
+     * @param drawable The drawable, or null to clear the icon
+     */
+    public void setIcon(int resId, Drawable drawable) {
+        mIconResId = resId;
+
+        if (drawable == mDrawable) {
+            return;
+        }
+
+        final boolean sizeChanged = (mDrawable == null || drawable == null ||
+                mDrawable.getIntrinsicWidth() != drawable.getIntrinsicWidth() ||
+                mDrawable.getIntrinsicHeight() != drawable.getIntrinsicHeight());
+
+        if (mDrawable != null) {
+            mDrawable.setCallback(null);
+            unscheduleDrawable(mDrawable);
+        }
+
+        mDrawable = drawable;
+
+        if (drawable != null) {
+            drawable.setCallback(this);
+            if (drawable.isStateful()) {
+                drawable.setState(getDrawableState());
+            }
+            drawable.setVisible(getVisibility() == VISIBLE, false);
+            updateDrawableBounds();
+        }
+
+        if (sizeChanged) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    public void setIconDrawable(Drawable drawable) {
+        setIcon(0, drawable);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int iconWidth = (mDrawable != null) ? Math.max(0, mDrawable.getIntrinsicWidth()) : 0;
+        final int iconHeight = (mDrawable != null) ? Math.max(0, mDrawable.getIntrinsicHeight()) : 0;
+
+        setMeasuredDimension(
+                resolveSize(Math.max(iconWidth + getPaddingLeft() + getPaddingRight(), getSuggestedMinimumWidth()), widthMeasureSpec),
+                resolveSize(Math.max(iconHeight + getPaddingTop() + getPaddingBottom(), getSuggestedMinimumHeight()), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateDrawableBounds();
+    }
+
+    private void updateDrawableBounds() {
+        if (mDrawable == null) {
+            return;
+        }
+
+        final int contentLeft = getPaddingLeft();
+        final int contentTop = getPaddingTop();
+        final int contentWidth = getWidth() - contentLeft - getPaddingRight();
+        final int contentHeight = getHeight() - contentTop - getPaddingBottom();
+
+        final int intrinsicWidth = mDrawable.getIntrinsicWidth();
+        final int intrinsicHeight = mDrawable.getIntrinsicHeight();
+        final int iconWidth;
+        final int iconHeight;
+
+        if (intrinsicWidth <= 0 || intrinsicHeight <= 0) {
+            // drawables without an intrinsic size (e.g. colors) fill the content area
+            iconWidth = contentWidth;
+            iconHeight = contentHeight;
+        } else {
+            // keep the aspect ratio, like the ImageButton this view replaces
+            final float scale = Math.min((float) contentWidth / intrinsicWidth, (float) contentHeight / intrinsicHeight);
+            iconWidth = Math.round(intrinsicWidth * scale);
+            iconHeight = Math.round(intrinsicHeight * scale);
+        }
+
+        final int left = contentLeft + (contentWidth - iconWidth) / 2;
+        final int top = contentTop + (contentHeight - iconHeight) / 2;
+
+        mDrawable.setBounds(left, top, left + iconWidth, top + iconHeight);
+    }
+
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        super.setPadding(left, top, right, bottom);
+        updateDrawableBounds();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if (mDrawable != null) {
+            mDrawable.draw(canvas);
+        }
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+
+        if (mDrawable != null && mDrawable.isStateful()) {
+            mDrawable.setState(getDrawableState());
+        }
+    }
+
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return (who == mDrawable) || super.verifyDrawable(who);
+    }
+
+    @Override
+    public void setVisibility(int visibility) {
+        super.setVisibility(visibility);
+
+        if (mDrawable != null) {
+            mDrawable.setVisible(visibility == VISIBLE, false);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+/**
+ * Scroll and indicator math of {@link PagerSlidingTabStrip}, independent of any Android class.
+ * <p/>
+ * The tabs are described by two arrays holding the left and right edges of each tab
+ * (in the coordinates of the scrolled content), of which the first {@code tabCount}
+ * entries are valid. The edges have to be in ascending order.
+ */
+public final class TabStripGeometry {
+
+	private TabStripGeometry() {
+	}
+
+	public static float lerp(float a, float b, float proportion) {
+		return (a * (1.0f - proportion)) + (b * proportion);
+	}
+
+	/**
+	 * Returns the first tab whose right edge is beyond x. Returns the last tab if x is
+	 * beyond all the tabs, and 0 if there are no tabs.
+	 */
+	public static int findTabAt(int[] tabRights, int tabCount, int x) {
+		// binary search
+		int low = 0;
+		int high = tabCount - 1;
+
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (tabRights[mid] <= x) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Interpolates an edge of the tab at the given position towards the same edge of the next tab.
+	 * Used to compute the left and the right of the indicator while the pager is dragged.
+	 *
+	 * @param tabEdges       Either the left or the right edges of the tabs
+	 * @param tabCount       Number of valid entries of tabEdges
+	 * @param position       Position of the current tab, has to be less than tabCount
+	 * @param positionOffset Offset towards the next tab in the range [0, 1)
+	 */
+	public static int interpolateTabEdge(int[] tabEdges, int tabCount, int position, float positionOffset) {
+		final int nextPosition = position + 1;
+		final float current = tabEdges[position];
+		final float next = (nextPosition < tabCount) ? tabEdges[nextPosition] : current;
+
+		return (int) lerp(current, next, positionOffset);
+	}
+
+	/**
+	 * Computes the horizontal scroll position which shows the tab at the given position.
+	 *
+	 * @param tabLefts       Left edges of the tabs
+	 * @param tabRights      Right edges of the tabs
+	 * @param tabCount       Number of valid entries of the edge arrays
+	 * @param position       Position of the current tab, has to be less than tabCount
+	 * @param positionOffset Offset towards the next tab in the range [0, 1)
+	 * @param viewportWidth  Width of the visible area
+	 * @param scrollToCenter True to center the tab, false to keep it scrollOffset pixels from the left
+	 * @param scrollOffset   Distance of the tab from the left of the visible area (unless centered)
+	 * @return The scroll position, which is never negative
+	 */
+	public static int computeScrollX(
+			int[] tabLefts, int[] tabRights, int tabCount, int position, float positionOffset,
+			int viewportWidth, boolean scrollToCenter, int scrollOffset) {
+
+		final int currentTabLeft = tabLefts[position];
+		final int currentTabWidth = tabRights[position] - currentTabLeft;
+
+		int scrollX = currentTabLeft + (int) (currentTabWidth * positionOffset);
+
+		if (scrollToCenter) {
+			final int nextPosition = position + 1;
+			final int width1 = currentTabWidth;
+			final int width2 = (nextPosition < tabCount) ? (tabRights[nextPosition] - tabLefts[nextPosition]) : width1;
+			final float interpolatedWidth = lerp((float) width1, (float) width2, positionOffset);
+
+			scrollX -= (int) ((viewportWidth - interpolatedWidth) * 0.5f);
+		} else {
+			scrollX -= scrollOffset;
+		}
+
+		return Math.max(0, scrollX);
+	}
+}
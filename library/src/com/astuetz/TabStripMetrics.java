@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+/**
+ * Collects counts and durations of the expensive operations of a {@link PagerSlidingTabStrip}.
+ * Attach an instance with {@link PagerSlidingTabStrip#setMetrics(TabStripMetrics)}; while no
+ * instance is attached the strip does not take any timestamps.
+ * All methods have to be called from the UI thread.
+ */
+public class TabStripMetrics {
+
+	public interface Listener {
+		/**
+		 * Called after each recorded operation.
+		 *
+		 * @param operation     One of the OPERATION_* constants
+		 * @param durationNanos Duration of the operation in nanoseconds
+		 */
+		void onOperationRecorded(int operation, long durationNanos);
+	}
+
+	public static final int OPERATION_NOTIFY_DATA_SET_CHANGED = 0;
+	public static final int OPERATION_UPDATE_TAB_STYLES = 1;
+	/** Measure pass of the strip, which is dominated by measuring the tabs container. */
+	public static final int OPERATION_MEASURE = 2;
+	/** Layout pass of the strip, which is dominated by laying out the tabs container. */
+	public static final int OPERATION_LAYOUT = 3;
+	public static final int OPERATION_DRAW = 4;
+	public static final int OPERATION_SCROLL_TO_CHILD = 5;
+
+	static final int OPERATION_COUNT = 6;
+
+	private final long[] counts = new long[OPERATION_COUNT];
+	private final long[] totalNanos = new long[OPERATION_COUNT];
+	private final long[] maxNanos = new long[OPERATION_COUNT];
+	private int measureCacheHitBase;
+	private int measureCacheMissBase;
+	private int avoidedLayoutBase;
+	private Listener listener;
+
+	public TabStripMetrics() {
+		reset();
+	}
+
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	public void reset() {
+		for (int i = 0; i < OPERATION_COUNT; i++) {
+			counts[i] = 0;
+			totalNanos[i] = 0;
+			maxNanos[i] = 0;
+		}
+
+		measureCacheHitBase = TabTextView.getMeasureCacheHitCount();
+		measureCacheMissBase = TabTextView.getMeasureCacheMissCount();
+		avoidedLayoutBase = TabTextView.getAvoidedLayoutCount();
+	}
+
+	/**
+	 * Returns an immutable copy of the current values.
+	 */
+	public Snapshot getSnapshot() {
+		return new Snapshot(
+				counts.clone(), totalNanos.clone(), maxNanos.clone(),
+				TabTextView.getMeasureCacheHitCount() - measureCacheHitBase,
+				TabTextView.getMeasureCacheMissCount() - measureCacheMissBase,
+				TabTextView.getAvoidedLayoutCount() - avoidedLayoutBase);
+	}
+
+	long startTiming() {
+		return System.nanoTime();
+	}
+
+	void record(int operation, long startNanos) {
+		final long duration = System.nanoTime() - startNanos;
+
+		counts[operation]++;
+		totalNanos[operation] += duration;
+		if (duration > maxNanos[operation]) {
+			maxNanos[operation] = duration;
+		}
+
+		if (listener != null) {
+			listener.onOperationRecorded(operation, duration);
+		}
+	}
+
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long[] totalNanos;
+		private final long[] maxNanos;
+		private final int measureCacheHitCount;
+		private final int measureCacheMissCount;
+		private final int avoidedLayoutCount;
+
+		Snapshot(long[] counts, long[] totalNanos, long[] maxNanos, int measureCacheHitCount, int measureCacheMissCount,
+				int avoidedLayoutCount) {
+			this.counts = counts;
+			this.totalNanos = totalNanos;
+			this.maxNanos = maxNanos;
+			this.measureCacheHitCount = measureCacheHitCount;
+			this.measureCacheMissCount = measureCacheMissCount;
+			this.avoidedLayoutCount = avoidedLayoutCount;
+		}
+
+		public long getCount(int operation) {
+			return counts[operation];
+		}
+
+		public long getTotalDurationNanos(int operation) {
+			return totalNanos[operation];
+		}
+
+		public long getMaxDurationNanos(int operation) {
+			return maxNanos[operation];
+		}
+
+		public long getAverageDurationNanos(int operation) {
+			return (counts[operation] > 0) ? (totalNanos[operation] / counts[operation]) : 0;
+		}
+
+		/**
+		 * Hits of the text measure cache shared by all TabTextViews (not only the ones of this strip).
+		 */
+		public int getMeasureCacheHitCount() {
+			return measureCacheHitCount;
+		}
+
+		/**
+		 * Misses of the text measure cache shared by all TabTextViews (not only the ones of this strip).
+		 */
+		public int getMeasureCacheMissCount() {
+			return measureCacheMissCount;
+		}
+
+		/**
+		 * Text and style changes of TabTextViews (not only the ones of this strip) which did not
+		 * request a layout, because the size of the tab did not change.
+		 */
+		public int getAvoidedLayoutCount() {
+			return avoidedLayoutCount;
+		}
+	}
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.view.Gravity;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures and draws the title and the badge of a single tab with a {@link TabTextStyle}.
+ * Used by {@link TabTextView} and by the flat mode of the strip, which draws all the
+ * tabs without a view of their own. Must only be used from the UI thread.
+ */
+class TabTextRenderer {
+    private static final Pattern BADGE_TEXT_PATTERN = Pattern.compile("^(.*)\\s*<(.*)>\\s*$"); // ex.) "Title <123>"
+    private static final int MEASURE_CACHE_SIZE = 512;
+    private static final int FIT_CACHE_SIZE = 256;
+
+    // shared by all instances, only accessed from the UI thread
+    private static final TextMeasureCache sMeasureCache = new TextMeasureCache(MEASURE_CACHE_SIZE);
+    // titles of pre-measured tabs which have not been laid out yet, the cache holds them in addition to its regular entries
+    private static int sReservedTitleCount;
+    private static final TextSizeFitter sSizeFitter = new TextSizeFitter(FIT_CACHE_SIZE);
+    private static final Rect sBounds = new Rect();
+    private static final Rect sGravityRect = new Rect();
+    private static final RectF sTempRectF = new RectF();
+
+    private TabTextStyle mStyle;
+    // the style the title is drawn with, a smaller variant of mStyle if the title has been fitted
+    private TabTextStyle mTitleStyle;
+    private int mTitleTextWidth = -1;
+    private String mText = "";
+    private String mRenderText = "";
+    private String mBadgeText;
+    private String mTitleBadgeText;
+    private String mCustomBadgeText;
+    private boolean mAllCaps = false;
+    private int mMeasuredTextWidth = -1;
+    private int mMeasuredBadgeTextWidth = -1;
+    private TextUtils.TruncateAt mEllipsize;
+
+    // the last ellipsized title and what it has been computed for
+    private String mEllipsizedText;
+    private int mEllipsizedTextWidth;
+    private String mEllipsizedSource;
+    private TabTextStyle mEllipsizedStyle;
+    private int mEllipsizedAvailableWidth;
+    private TextUtils.TruncateAt mEllipsizedWhere;
+
+    TabTextRenderer(TabTextStyle style) {
+        mStyle = style;
+        mTitleStyle = style;
+    }
+
+    static TextMeasureCache getMeasureCache() {
+        return sMeasureCache;
+    }
+
+    /**
+     * Grows the shared measure cache, so it can hold the given number of pre-measured titles
+     * in addition to its regular entries, until {@link #releaseMeasureCacheCapacity(int)}.
+     */
+    static void reserveMeasureCacheCapacity(int titleCount) {
+        sReservedTitleCount += titleCount;
+        sMeasureCache.setMaxSize(MEASURE_CACHE_SIZE + sReservedTitleCount);
+    }
+
+    /**
+     * Shrinks the shared measure cache back, once the pre-measured titles have been used.
+     */
+    static void releaseMeasureCacheCapacity(int titleCount) {
+        sReservedTitleCount -= titleCount;
+        sMeasureCache.setMaxSize(MEASURE_CACHE_SIZE + sReservedTitleCount);
+    }
+
+    /**
+     * Returns the text which is drawn for the given title, i.e. the title without
+     * the badge encoded in it. Can be called from any thread.
+     */
+    static String getRenderText(CharSequence title, boolean allCaps) {
+        Matcher m = mayHaveBadge(title) ? BADGE_TEXT_PATTERN.matcher(title) : null;
+        final String text = (m != null && m.find()) ? m.group(1) : title.toString();
+        return (allCaps) ? text.toUpperCase() : text;
+    }
+
+    TabTextStyle getStyle() {
+        return mStyle;
+    }
+
+    /**
+     * Also resets the size set by {@link #setTitleTextSize(float)}.
+     * The text bounds have to be updated afterwards.
+     */
+    void setStyle(TabTextStyle style) {
+        mStyle = style;
+        mTitleStyle = style;
+    }
+
+    String getText() {
+        return mText;
+    }
+
+    String getBadgeText() {
+        return mBadgeText;
+    }
+
+    /**
+     * Sets the title, parsing the badge encoded in it (if any).
+     * The text bounds have to be updated afterwards.
+     *
+     * @return false if the title has not been changed
+     */
+    boolean setText(CharSequence text) {
+        text = (text == null) ? "" : text;
+
+        if (mText.equals(text))
+            return false;
+
+        Matcher m = mayHaveBadge(text) ? BADGE_TEXT_PATTERN.matcher(text) : null;
+        if (m != null && m.find()) {
+            mText = m.group(1);
+            mTitleBadgeText = m.group(2);
+        } else {
+            mText = text.toString();
+            mTitleBadgeText = null;
+        }
+        mBadgeText = (mCustomBadgeText != null) ? mCustomBadgeText : mTitleBadgeText;
+        mRenderText = (mAllCaps) ? mText.toUpperCase() : mText;
+
+        return true;
+    }
+
+    /**
+     * The text bounds have to be updated afterwards.
+     *
+     * @return false if the flag has not been changed
+     */
+    boolean setAllCaps(boolean allCaps) {
+        if (mAllCaps == allCaps) {
+            return false;
+        }
+
+        mAllCaps = allCaps;
+        mRenderText = (allCaps) ? mText.toUpperCase() : mText;
+
+        return true;
+    }
+
+    /**
+     * Sets where titles wider than the space left next to the badge are ellipsized.
+     *
+     * @param where START, MIDDLE or END, or null to let long titles overflow.
+     *              MARQUEE is not supported and treated like END.
+     */
+    void setEllipsize(TextUtils.TruncateAt where) {
+        mEllipsize = (where == TextUtils.TruncateAt.MARQUEE) ? TextUtils.TruncateAt.END : where;
+    }
+
+    TextUtils.TruncateAt getEllipsize() {
+        return mEllipsize;
+    }
+
+    /**
+     * Sets the badge text without parsing it out of the title. Measures the badge immediately.
+     *
+     * @param badgeText The badge text, or null to show the badge encoded in the title (if any).
+     * @return false if the shown badge has not been changed
+     */
+    boolean setBadgeText(CharSequence badgeText) {
+        mCustomBadgeText = (badgeText != null) ? badgeText.toString() : null;
+
+        final String badge = (mCustomBadgeText != null) ? mCustomBadgeText : mTitleBadgeText;
+
+        if ((badge == null) ? (mBadgeText == null) : badge.equals(mBadgeText)) {
+            return false;
+        }
+
+        mBadgeText = badge;
+        updateBadgeBounds();
+
+        return true;
+    }
+
+    void updateTextBounds() {
+        mMeasuredTextWidth = sMeasureCache.getTextWidth(mStyle.getTextPaint(), mRenderText);
+        updateTitleTextWidth();
+        updateBadgeBounds();
+    }
+
+    private void updateTitleTextWidth() {
+        if (mTitleStyle == mStyle) {
+            mTitleTextWidth = mMeasuredTextWidth;
+        } else {
+            mTitleTextWidth = sMeasureCache.getTextWidth(mTitleStyle.getTextPaint(), mRenderText);
+        }
+    }
+
+    /**
+     * Returns the largest text size, not greater than the one of the style, at which the title
+     * fits into the content width next to the badge. The results of the size search are cached,
+     * so fitting the same title to the same width again does not measure any text.
+     */
+    float fitTextSize(int contentWidth, float minTextSize) {
+        final int availableWidth = contentWidth - getBadgeAndSpaceWidth();
+
+        if (mMeasuredTextWidth <= availableWidth) {
+            return mStyle.getTextSize();
+        }
+
+        return sSizeFitter.fitTextSize(mStyle.getTextPaint(), mRenderText, availableWidth, minTextSize);
+    }
+
+    /**
+     * Draws the title with the given size instead of the size of the style. The badge keeps its size.
+     *
+     * @return false if the size has not been changed
+     */
+    boolean setTitleTextSize(float textSize) {
+        final TabTextStyle titleStyle = mStyle.getScaledStyle(textSize);
+
+        if (titleStyle == mTitleStyle) {
+            return false;
+        }
+
+        mTitleStyle = titleStyle;
+        updateTitleTextWidth();
+
+        return true;
+    }
+
+    private void updateBadgeBounds() {
+        if (mBadgeText != null) {
+            mMeasuredBadgeTextWidth = sMeasureCache.getTextWidth(mStyle.getBadgeTextPaint(), mBadgeText);
+        } else {
+            mMeasuredBadgeTextWidth = -1;
+        }
+    }
+
+    boolean hasTextBounds() {
+        return mMeasuredTextWidth > 0 && mStyle.getTextLineHeight() > 0;
+    }
+
+    /**
+     * Returns the width of the title and the badge, without any padding.
+     */
+    int getDesiredWidth() {
+        int result = mMeasuredTextWidth;
+
+        if (mMeasuredBadgeTextWidth >= 0) {
+            result += mStyle.getBadgeLeftSpace() + getBadgeWidth();
+        }
+
+        return result;
+    }
+
+    int getLineHeight() {
+        return mStyle.getTextLineHeight();
+    }
+
+    private int getBadgeWidth() {
+        return mMeasuredBadgeTextWidth + (mStyle.getBadgeLineHeight() + mStyle.getBadgeVerticalPadding() * 2);
+    }
+
+    private int getBadgeAndSpaceWidth() {
+        return (mMeasuredBadgeTextWidth >= 0) ? (getBadgeWidth() + mStyle.getBadgeLeftSpace()) : 0;
+    }
+
+    /**
+     * Draws the title and the badge, positioned within the given content bounds by the gravity.
+     */
+    void draw(Canvas canvas, int left, int top, int right, int bottom, int gravity, int textColor) {
+        final TabTextStyle style = mStyle;
+        final TabTextStyle titleStyle = mTitleStyle;
+        final TextPaint textPaint = titleStyle.getTextPaint();
+        final TextPaint badgePaint = style.getBadgeTextPaint();
+        final Rect bounds = sBounds;
+        final Rect gravityRect = sGravityRect;
+        final int badgeWidth;
+        final int badgeAndSpaceWidth;
+
+        if (mMeasuredBadgeTextWidth >= 0) {
+            badgeWidth = getBadgeWidth();
+            badgeAndSpaceWidth = badgeWidth + style.getBadgeLeftSpace();
+        } else {
+            badgeWidth = 0;
+            badgeAndSpaceWidth = 0;
+        }
+
+        final String text = getDrawnText(right - left - badgeAndSpaceWidth);
+        final int textWidth = (text == mRenderText) ? mTitleTextWidth : mEllipsizedTextWidth;
+
+        {
+            bounds.set(left, top, right, bottom);
+            Gravity.apply(
+                    gravity,
+                    textWidth + badgeAndSpaceWidth,
+                    titleStyle.getTextLineHeight(),
+                    bounds, gravityRect);
+            Gravity.applyDisplay(gravity, bounds, gravityRect);
+
+            final Paint.FontMetricsInt fm = titleStyle.getTextFontMetrics();
+            final int textLeft = gravityRect.left;
+            final int textBottom = gravityRect.bottom - (fm.descent + fm.leading);
+
+            textPaint.setColor(textColor);
+            canvas.drawText(text, textLeft, textBottom, textPaint);
+        }
+
+        if (badgeWidth > 0) {
+            int r = gravityRect.bottom;
+            RectF rect = sTempRectF;
+
+            int badgeLeft = gravityRect.right - badgeWidth;
+            int badgeTop = gravityRect.top - style.getBadgeVerticalPadding();
+            int badgeBottom = gravityRect.bottom + style.getBadgeVerticalPadding();
+
+            rect.set(badgeLeft, badgeTop, badgeLeft + badgeWidth, badgeBottom);
+
+            canvas.drawRoundRect(rect, r, r, textPaint);
+
+            bounds.set(badgeLeft, badgeTop, badgeLeft + badgeWidth, badgeBottom);
+
+            Gravity.apply(
+                    Gravity.CENTER,
+                    mMeasuredBadgeTextWidth, style.getBadgeLineHeight(),
+                    bounds, gravityRect);
+
+            final Paint.FontMetricsInt fm = style.getBadgeFontMetrics();
+            final int textLeft = gravityRect.left;
+            final int textBottom = gravityRect.bottom - (fm.descent + fm.leading);
+
+            badgePaint.setColor(style.getBadgeTextColor());
+
+            canvas.drawText(mBadgeText, textLeft, textBottom, badgePaint);
+        }
+    }
+
+    /**
+     * Returns the title, ellipsized if it does not fit into the available width.
+     * The ellipsized title is only recomputed if the title, the style or the width changes.
+     */
+    private String getDrawnText(int availableWidth) {
+        if (mEllipsize == null || mTitleTextWidth <= availableWidth) {
+            return mRenderText;
+        }
+
+        if (availableWidth != mEllipsizedAvailableWidth ||
+                mTitleStyle != mEllipsizedStyle ||
+                mEllipsize != mEllipsizedWhere ||
+                !mRenderText.equals(mEllipsizedSource)) {
+            final TextPaint paint = mTitleStyle.getTextPaint();
+
+            mEllipsizedText = TextUtils.ellipsize(mRenderText, paint, Math.max(0, availableWidth), mEllipsize).toString();
+            mEllipsizedTextWidth = sMeasureCache.getTextWidth(paint, mEllipsizedText);
+            mEllipsizedSource = mRenderText;
+            mEllipsizedStyle = mTitleStyle;
+            mEllipsizedAvailableWidth = availableWidth;
+            mEllipsizedWhere = mEllipsize;
+        }
+
+        return mEllipsizedText;
+    }
+
+    private static boolean mayHaveBadge(CharSequence text) {
+        // cheap pre-check for BADGE_TEXT_PATTERN, the last non-whitespace character has to be '>'
+        for (int i = text.length() - 1; i >= 0; i--) {
+            final char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return (c == '>');
+            }
+        }
+        return false;
+    }
+}
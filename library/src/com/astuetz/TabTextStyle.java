@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.util.SparseArray;
+
+/**
+ * Paints and font metrics used to measure and draw tab titles and badges.
+ * A single instance is shared by all the tabs of a strip; a style change creates a new instance.
+ * Not modified after construction except for the cache of scaled variants and the paint colors,
+ * which are set right before drawing. UI thread only.
+ */
+final class TabTextStyle {
+    static final float BADGE_TEXT_FONT_SCALE = 0.85f;
+    private static final float BADGE_LEFT_SPACE_DP = 4.0f;
+    private static final float BADGE_TEXT_VERTICAL_PADDING_DP = 2.0f;
+    private static final float DEFAULT_TEXT_SIZE = 15.0f;
+    // auto-sizing can ask for a different size for every tab
+    private static final int MAX_SCALED_STYLE_COUNT = 16;
+
+    // only accessed from the UI thread
+    private static TabTextStyle sDefaultStyle;
+
+    private final TextPaint mTextPaint;
+    private final TextPaint mBadgeTextPaint;
+    private final Paint.FontMetricsInt mTextFontMetrics = new Paint.FontMetricsInt();
+    private final Paint.FontMetricsInt mBadgeFontMetrics = new Paint.FontMetricsInt();
+    private final int mBadgeLeftSpace;
+    private final int mBadgeVerticalPadding;
+    private final int mTextLineHeight;
+    private final int mBadgeLineHeight;
+    private final int mBadgeTextColor = Color.WHITE;
+
+    private final float mDensity;
+    private final float mTextSize;
+    // as requested, before resolving the style
+    private final Typeface mTypeface;
+    private final int mTypefaceStyle;
+    // smaller variants of this style for auto-sized titles, keyed by the bits of the text size
+    private SparseArray<TabTextStyle> mScaledStyles;
+
+    /**
+     * Returns the style of tabs which have not been styled yet.
+     */
+    static TabTextStyle getDefault(float density) {
+        if (sDefaultStyle == null || sDefaultStyle.mDensity != density) {
+            sDefaultStyle = new TabTextStyle(density, DEFAULT_TEXT_SIZE, null, Typeface.NORMAL);
+        }
+        return sDefaultStyle;
+    }
+
+    TabTextStyle(float density, float textSize, Typeface typeface, int typefaceStyle) {
+        mDensity = density;
+        mTextSize = textSize;
+        mTypeface = typeface;
+        mTypefaceStyle = typefaceStyle;
+
+        mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        mTextPaint.density = density;
+        mTextPaint.setTextSize(textSize);
+        mBadgeTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        mBadgeTextPaint.density = density;
+        mBadgeTextPaint.setTextSize(textSize * BADGE_TEXT_FONT_SCALE);
+        mBadgeLeftSpace = (int) (BADGE_LEFT_SPACE_DP * density);
+        mBadgeVerticalPadding = (int) (BADGE_TEXT_VERTICAL_PADDING_DP * density);
+
+        applyTypeface(typeface, typefaceStyle);
+
+        // font metrics only depend on the paints, not on the text
+        mTextPaint.getFontMetricsInt(mTextFontMetrics);
+        mBadgeTextPaint.getFontMetricsInt(mBadgeFontMetrics);
+        mTextLineHeight = getLineHeight(mTextFontMetrics);
+        mBadgeLineHeight = getLineHeight(mBadgeFontMetrics);
+    }
+
+    /**
+     * @return this instance if the size is the same, otherwise a new style with the given size
+     */
+    TabTextStyle withTextSize(float textSize) {
+        if (textSize == mTextSize) {
+            return this;
+        }
+        return new TabTextStyle(mDensity, textSize, mTypeface, mTypefaceStyle);
+    }
+
+    /**
+     * @return this instance if the typeface is the same, otherwise a new style with the given typeface
+     */
+    TabTextStyle withTypeface(Typeface typeface, int typefaceStyle) {
+        if (hasTypeface(typeface, typefaceStyle)) {
+            return this;
+        }
+        return new TabTextStyle(mDensity, mTextSize, typeface, typefaceStyle);
+    }
+
+    /**
+     * Like {@link #withTextSize(float)}, but a bounded number of variants is kept, so all the
+     * tabs whose titles are drawn with the same smaller size share a single instance.
+     */
+    TabTextStyle getScaledStyle(float textSize) {
+        if (textSize == mTextSize) {
+            return this;
+        }
+
+        if (mScaledStyles == null) {
+            mScaledStyles = new SparseArray<TabTextStyle>();
+        }
+
+        final int key = Float.floatToIntBits(textSize);
+        TabTextStyle style = mScaledStyles.get(key);
+
+        if (style == null) {
+            if (mScaledStyles.size() >= MAX_SCALED_STYLE_COUNT) {
+                // the tabs keep the variants they already use, only the sharing starts over
+                mScaledStyles.clear();
+            }
+
+            style = new TabTextStyle(mDensity, textSize, mTypeface, mTypefaceStyle);
+            mScaledStyles.put(key, style);
+        }
+
+        return style;
+    }
+
+    /**
+     * Returns the paint of the titles. It is shared by all the tabs using this style, only its color may be changed.
+     */
+    TextPaint getTextPaint() {
+        return mTextPaint;
+    }
+
+    /**
+     * Returns the paint of the badges. It is shared by all the tabs using this style, only its color may be changed.
+     */
+    TextPaint getBadgeTextPaint() {
+        return mBadgeTextPaint;
+    }
+
+    Paint.FontMetricsInt getTextFontMetrics() {
+        return mTextFontMetrics;
+    }
+
+    Paint.FontMetricsInt getBadgeFontMetrics() {
+        return mBadgeFontMetrics;
+    }
+
+    int getBadgeLeftSpace() {
+        return mBadgeLeftSpace;
+    }
+
+    int getBadgeVerticalPadding() {
+        return mBadgeVerticalPadding;
+    }
+
+    int getTextLineHeight() {
+        return mTextLineHeight;
+    }
+
+    int getBadgeLineHeight() {
+        return mBadgeLineHeight;
+    }
+
+    int getBadgeTextColor() {
+        return mBadgeTextColor;
+    }
+
+    boolean hasTypeface(Typeface typeface, int typefaceStyle) {
+        return (typeface == mTypeface && typefaceStyle == mTypefaceStyle);
+    }
+
+    float getTextSize() {
+        return mTextSize;
+    }
+
+    /**
+     * Applies the typeface, faking the parts of the style the typeface does not provide.
+     */
+    private void applyTypeface(Typeface tf, int style) {
+        boolean fakeBold = false;
+        float skewX = 0;
+
+        if (style > 0) {
+            if (tf == null) {
+                tf = Typeface.defaultFromStyle(style);
+            } else {
+                tf = Typeface.create(tf, style);
+            }
+
+            // now compute what (if any) algorithmic styling is needed
+            int typefaceStyle = tf != null ? tf.getStyle() : 0;
+            int need = style & ~typefaceStyle;
+            fakeBold = (need & Typeface.BOLD) != 0;
+            skewX = (need & Typeface.ITALIC) != 0 ? -0.25f : 0;
+        }
+
+        mTextPaint.setTypeface(tf);
+        mTextPaint.setFakeBoldText(fakeBold);
+        mTextPaint.setTextSkewX(skewX);
+        mBadgeTextPaint.setTypeface(tf);
+        mBadgeTextPaint.setFakeBoldText(fakeBold);
+        mBadgeTextPaint.setTextSkewX(skewX);
+    }
+
+    private static int getLineHeight(Paint.FontMetricsInt fm) {
+        return fm.descent - fm.ascent + fm.leading;
+    }
+}
@@ -7,53 +7,36 @@ import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Rect;
-import android.graphics.RectF;
 import android.graphics.Typeface;
-import android.text.TextPaint;
 import android.text.TextUtils;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 public class TabTextView extends View {
     @SuppressWarnings("unused")
     private static final String TAG = "TabTextView";
 
-    private static final Pattern BADGE_TEXT_PATTERN = Pattern.compile("^(.*)\\s*<(.*)>\\s*$"); // ex.) "Title <123>"
-    private static final float BADGE_TEXT_FONT_SCALE = 0.85f;
-    private static final float BADGE_LEFT_SPACE_DP = 4.0f;
-    private static final float BADGE_TEXT_VERTICAL_PADDING_DP = 2.0f;
+    // only accessed from the UI thread
+    private static int sAvoidedLayoutCount;
 
-    private String mText = "";
-    private String mRenderText = "";
-    private String mBadgeText;
-    private TextPaint mTextPaint;
-    private TextPaint mBadgeTextPaint;
+    private TabTextStyle mStyle;
+    private TabTextRenderer mRenderer;
     private int mTextColor;
     private int mCurrentTextColor;
     private ColorStateList mTextColorStateList;
     private int mGravity;
-    private Rect mClipBounds;
-    private Rect mGravityRect;
-    private Rect mMeasuredBounds;
-    private int mMeasuredTextLineHeight = -1;
-    private int mMeasuredTextWidth = -1;
-    private int mMeasuredBadgeLineHeight = -1;
-    private int mMeasuredBadgeTextWidth = -1;
-    private Paint.FontMetricsInt mTextFontMetrics;
-    private Paint.FontMetricsInt mBadgeFontMetrics;
+    private int mBatchUpdateDepth;
+    private boolean mBatchUpdatePending;
     private int mMinWidth = 0;
     private int mMinHeight = 0;
-    private boolean mAllCaps = false;
-    private RectF mTempRectF = new RectF();
-    private int mBadgeLeftSpace;
-    private int mBadgeVerticalPadding;
-    private int mBadgeTextColor = Color.WHITE;
+    private int mContentWidth = -1;
+    private int mContentHeight = -1;
+    private boolean mAutoSizeText;
+    private float mAutoSizeMinTextSize;
+    private float mFittedTextSize;
+    private float mCommonTextSize;
 
     public TabTextView(Context context) {
         super(context);
@@ -64,30 +47,50 @@ public class TabTextView extends View {
         final Resources res = getResources();
         float density = res.getDisplayMetrics().density;
 
-        mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
-        mTextPaint.density = density;
-        mTextPaint.setTextSize(15.0f);
-        mBadgeTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
-        mBadgeTextPaint.density = density;
-        mBadgeTextPaint.setTextSize(15.0f * BADGE_TEXT_FONT_SCALE);
+        mStyle = TabTextStyle.getDefault(density);
+        mRenderer = new TabTextRenderer(mStyle);
         mTextColor = mCurrentTextColor = Color.WHITE;
         mTextColorStateList = null;
         mGravity = Gravity.TOP | Gravity.LEFT;
-        mClipBounds = new Rect();
-        mGravityRect = new Rect();
-        mMeasuredBounds = new Rect();
-        mBadgeLeftSpace = (int) (BADGE_LEFT_SPACE_DP * density);
-        mBadgeVerticalPadding = (int) (BADGE_TEXT_VERTICAL_PADDING_DP * density);
 
         updateTextBounds();
     }
 
+    /**
+     * Returns the number of text measurements served from the measure cache
+     * shared by all the TabTextView instances.
+     */
+    public static int getMeasureCacheHitCount() {
+        return TabTextRenderer.getMeasureCache().getHitCount();
+    }
+
+    /**
+     * Returns the number of text measurements which missed the measure cache
+     * shared by all the TabTextView instances.
+     */
+    public static int getMeasureCacheMissCount() {
+        return TabTextRenderer.getMeasureCache().getMissCount();
+    }
+
+    /**
+     * Returns how many times a text or style change of any TabTextView has not requested
+     * a layout, because the measured width and height of the content did not change.
+     */
+    public static int getAvoidedLayoutCount() {
+        return sAvoidedLayoutCount;
+    }
+
     public CharSequence getText() {
-        return mText;
+        return mRenderer.getText();
     }
 
+    /**
+     * Returns the text paint, which is shared with the other tabs of the strip and must not be
+     * modified. Use {@link #setTextSize(float)}, {@link #setTypeface(Typeface, int)} and
+     * {@link #setTextColor(int)} to change the style of this tab.
+     */
     public Paint getPaint() {
-        return mTextPaint;
+        return mStyle.getTextPaint();
     }
 
     public void setTextColor(int color) {
@@ -134,14 +137,79 @@ public class TabTextView extends View {
     }
 
     private void setRawTextSize(float size) {
-        if (size != mTextPaint.getTextSize()) {
-            mTextPaint.setTextSize(size);
-            mBadgeTextPaint.setTextSize(size * BADGE_TEXT_FONT_SCALE);
+        setTextStyle(mStyle.withTextSize(size));
+    }
 
-            updateTextBounds();
+    /**
+     * Applies a style which is shared with other tabs, see {@link TabTextStyle}.
+     */
+    void setTextStyle(TabTextStyle style) {
+        if (mStyle == style) {
+            return;
+        }
+
+        mStyle = style;
+        mRenderer.setStyle(style);
+        onTextBoundsChanged(true);
+    }
+
+    /**
+     * Defers text measurement and layout requests of the following setter calls
+     * until the matching {@link #endBatchUpdate()} call.
+     */
+    void beginBatchUpdate() {
+        mBatchUpdateDepth++;
+    }
+
+    void endBatchUpdate() {
+        if (mBatchUpdateDepth == 0) {
+            throw new IllegalStateException("endBatchUpdate() called without beginBatchUpdate()");
+        }
+
+        mBatchUpdateDepth--;
+
+        if (mBatchUpdateDepth == 0 && mBatchUpdatePending) {
+            mBatchUpdatePending = false;
+            onTextBoundsChanged(true);
+        }
+    }
+
+    private void onTextBoundsChanged(boolean alwaysRequestLayout) {
+        if (mBatchUpdateDepth > 0) {
+            mBatchUpdatePending = true;
+            return;
+        }
+
+        if (!updateTextBounds()) {
+            // same extents, only the drawn content changed
+            sAvoidedLayoutCount++;
+        } else if (alwaysRequestLayout) {
             requestLayout();
-            invalidate();
+        } else {
+            requestLayoutIfNeeded();
         }
+        updateTitleTextSize();
+        invalidate();
+    }
+
+    /**
+     * Measures the text and the badge.
+     *
+     * @return true if the width or the height of the content has been changed
+     */
+    private boolean updateTextBounds() {
+        mRenderer.updateTextBounds();
+
+        final int width = mRenderer.getDesiredWidth();
+        final int height = mRenderer.getLineHeight();
+
+        if (width == mContentWidth && height == mContentHeight) {
+            return false;
+        }
+
+        mContentWidth = width;
+        mContentHeight = height;
+        return true;
     }
 
     private void requestLayoutIfNeeded() {
@@ -167,169 +235,136 @@ public class TabTextView extends View {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        final String text = mRenderText;
-        final TextPaint textPaint = mTextPaint;
-        final int textWidth = mMeasuredTextWidth;
-        final TextPaint badgePaint = mBadgeTextPaint;
-        final int badgeWidth;
-        final int badgeAndSpaceWidth;
-
-        if (mMeasuredBadgeTextWidth >= 0) {
-            badgeWidth = mMeasuredBadgeTextWidth + (mMeasuredBadgeLineHeight + mBadgeVerticalPadding * 2);
-            badgeAndSpaceWidth = badgeWidth + mBadgeLeftSpace;
-        } else {
-            badgeWidth = 0;
-            badgeAndSpaceWidth = 0;
-        }
-
-        canvas.getClipBounds(mClipBounds);
-
-        {
-            mMeasuredBounds.left = 0;
-            mMeasuredBounds.top = 0;
-            mMeasuredBounds.right = getMeasuredWidth();
-            mMeasuredBounds.bottom = getMeasuredHeight();
-            // mClipBounds.left = 0;
-            // mClipBounds.top = 0;
-            Gravity.apply(
-                    mGravity,
-                    textWidth + badgeAndSpaceWidth,
-                    mMeasuredTextLineHeight,
-                    mMeasuredBounds, mGravityRect);
-            Gravity.applyDisplay(mGravity, mMeasuredBounds, mGravityRect);
-
-            final Paint.FontMetricsInt fm = getTextFontMetricsInt();
-            final int textLeft = mGravityRect.left;
-            final int textBottom = mGravityRect.bottom - (fm.descent + fm.leading);
-
-            textPaint.setColor(mCurrentTextColor);
-            canvas.drawText(text, textLeft, textBottom, textPaint);
-        }
-
-        if (badgeWidth > 0) {
-            int r = mGravityRect.bottom;
-            RectF rect = mTempRectF;
-
-            int left = mGravityRect.right - badgeWidth;
-            int top = mGravityRect.top - mBadgeVerticalPadding;
-            int bottom = mGravityRect.bottom + mBadgeVerticalPadding;
-
-            rect.set(left, top, left + badgeWidth, bottom);
-
-            canvas.drawRoundRect(rect, r, r, textPaint);
-
-            mMeasuredBounds.left = left;
-            mMeasuredBounds.top = top;
-            mMeasuredBounds.right = left + badgeWidth;
-            mMeasuredBounds.bottom = bottom;
 
-            Gravity.apply(
-                    Gravity.CENTER,
-                    mMeasuredBadgeTextWidth, mMeasuredBadgeLineHeight,
-                    mMeasuredBounds, mGravityRect);
+        mRenderer.draw(canvas,
+                getPaddingLeft(), getPaddingTop(),
+                getWidth() - getPaddingRight(), getHeight() - getPaddingBottom(),
+                mGravity, mCurrentTextColor);
+    }
 
-            final Paint.FontMetricsInt fm = getBadgeFontMetricsInt();
-            final int textLeft = mGravityRect.left;
-            final int textBottom = mGravityRect.bottom - (fm.descent + fm.leading);
+    public void setMinWidth(int minWidth) {
+        if (minWidth != mMinWidth) {
+            mMinWidth = minWidth;
+            requestLayoutIfNeeded();
+        }
+    }
 
-            badgePaint.setColor(mBadgeTextColor);
+    public int getMinWidth() {
+        return mMinWidth;
+    }
 
-            canvas.drawText(mBadgeText, textLeft, textBottom, badgePaint);
+    public void setGravity(int gravity) {
+        if (gravity != mGravity) {
+            mGravity = gravity;
+            invalidate();
         }
     }
 
-    private Paint.FontMetricsInt getTextFontMetricsInt() {
-        if (mTextFontMetrics == null) {
-            mTextFontMetrics = mTextPaint.getFontMetricsInt();
-        } else {
-            mTextPaint.getFontMetricsInt(mTextFontMetrics);
+    public void setText(CharSequence text) {
+        if (mRenderer.setText(text)) {
+            onTextBoundsChanged(false);
         }
-        return mTextFontMetrics;
     }
 
-    private Paint.FontMetricsInt getBadgeFontMetricsInt() {
-        if (mBadgeFontMetrics == null) {
-            mBadgeFontMetrics = mBadgeTextPaint.getFontMetricsInt();
+    public CharSequence getBadgeText() {
+        return mRenderer.getBadgeText();
+    }
+
+    /**
+     * Sets the badge text without parsing it out of the title.
+     * Only requests a layout if the width of the tab actually changes.
+     *
+     * @param badgeText The badge text, or null to show the badge encoded in the title (if any).
+     */
+    public void setBadgeText(CharSequence badgeText) {
+        if (!mRenderer.setBadgeText(badgeText)) {
+            return;
+        }
+
+        final int width = mRenderer.getDesiredWidth();
+
+        if (width != mContentWidth) {
+            mContentWidth = width;
+            requestLayoutIfNeeded();
         } else {
-            mBadgeTextPaint.getFontMetricsInt(mBadgeFontMetrics);
+            sAvoidedLayoutCount++;
         }
-        return mBadgeFontMetrics;
+        updateTitleTextSize();
+        invalidate();
     }
 
-    private void updateTextBounds() {
-        {
-            final Paint paint = mTextPaint;
-            final Paint.FontMetricsInt fm = getTextFontMetricsInt();
-            final String text = mRenderText;
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
 
-            mMeasuredTextLineHeight = getLineHeight(fm);
-            mMeasuredTextWidth = getTextWidth(paint, text);
-        }
+        // the fitted sizes are cached, a layout with the same width does not measure any text
+        updateTitleTextSize();
+    }
 
-        if (mBadgeText != null) {
-            final Paint paint = mBadgeTextPaint;
-            final Paint.FontMetricsInt fm = getBadgeFontMetricsInt();
-            final String text = mBadgeText;
+    /**
+     * Shrinks the title to the width of the tab, if auto-sizing is enabled.
+     */
+    private void updateTitleTextSize() {
+        final float size;
 
-            mMeasuredBadgeLineHeight = getLineHeight(fm);
-            mMeasuredBadgeTextWidth = getTextWidth(paint, text);
+        if (mAutoSizeText && getWidth() > 0) {
+            mFittedTextSize = mRenderer.fitTextSize(getWidth() - getPaddingLeft() - getPaddingRight(), mAutoSizeMinTextSize);
+            size = (mCommonTextSize > 0) ? Math.min(mFittedTextSize, mCommonTextSize) : mFittedTextSize;
         } else {
-            mMeasuredBadgeTextWidth = -1;
+            mFittedTextSize = mRenderer.getStyle().getTextSize();
+            size = mFittedTextSize;
         }
-    }
 
-    public void setGravity(int gravity) {
-        if (gravity != mGravity) {
-            mGravity = gravity;
+        if (mRenderer.setTitleTextSize(size)) {
             invalidate();
         }
     }
 
-    public void setText(CharSequence text) {
-        text = (text == null) ? "" : text;
-
-        if (mText.equals(text))
+    /**
+     * Shrinks titles which do not fit into the width of the tab, down to the given minimum size.
+     * Fitted sizes are cached per title, width and style, so a relayout or a rotation back
+     * to the same width does not measure any text.
+     *
+     * @param enabled       Whether to shrink long titles, false by default
+     * @param minTextSizePx The smallest size titles are shrunk to, in pixels
+     */
+    public void setAutoSizeText(boolean enabled, float minTextSizePx) {
+        if (mAutoSizeText == enabled && mAutoSizeMinTextSize == minTextSizePx) {
             return;
+        }
 
-        setText(text, mAllCaps, true);
-
-        updateTextBounds();
-        requestLayoutIfNeeded();
-        invalidate();
+        mAutoSizeText = enabled;
+        mAutoSizeMinTextSize = minTextSizePx;
+        updateTitleTextSize();
     }
 
-    private void setText(CharSequence text, boolean allCaps, boolean updateBadge) {
-        if (updateBadge) {
-            Matcher m = BADGE_TEXT_PATTERN.matcher(text);
-            if (m.find()) {
-                mText = m.group(1);
-                mBadgeText = m.group(2);
-            } else {
-                mText = text.toString();
-                mBadgeText = null;
-            }
-        } else {
-            mText = text.toString();
-        }
-
-        mRenderText = (allCaps) ? mText.toUpperCase() : mText;
+    public boolean isAutoSizeText() {
+        return mAutoSizeText;
+    }
 
-        updateTextBounds();
-        requestLayoutIfNeeded();
-        invalidate();
+    /**
+     * Returns the size the title has been fitted to, without the common size applied.
+     */
+    float getFittedTextSize() {
+        return mFittedTextSize;
     }
 
-    @Override
-    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        super.onSizeChanged(w, h, oldw, oldh);
-        updateTextBounds();
+    /**
+     * Sets a size which the title is not drawn larger than, e.g. to draw all the tabs of
+     * a strip with the same size. Zero or less removes the limit.
+     */
+    void setCommonTextSize(float textSize) {
+        if (mCommonTextSize != textSize) {
+            mCommonTextSize = textSize;
+            updateTitleTextSize();
+        }
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 
-        if (mMeasuredTextWidth <= 0 || mMeasuredTextLineHeight <= 0) {
+        if (!mRenderer.hasTextBounds()) {
             updateTextBounds();
         }
 
@@ -346,12 +381,7 @@ public class TabTextView extends View {
             result = specSize;
         } else {
             // Measure the text
-            result = mMeasuredTextWidth + getPaddingLeft() + getPaddingRight();
-
-            if (mMeasuredBadgeTextWidth >= 0) {
-                int badgeWidth = mMeasuredBadgeTextWidth + (mMeasuredBadgeLineHeight + mBadgeVerticalPadding * 2);
-                result += mBadgeLeftSpace + badgeWidth;
-            }
+            result = getDesiredWidth();
 
             if (specMode == MeasureSpec.AT_MOST) {
                 // Respect AT_MOST value if that was what is called for by
@@ -366,6 +396,10 @@ public class TabTextView extends View {
         return result;
     }
 
+    private int getDesiredWidth() {
+        return mRenderer.getDesiredWidth() + getPaddingLeft() + getPaddingRight();
+    }
+
     private int measureHeight(int measureSpec) {
         int result = 0;
         final int specMode = MeasureSpec.getMode(measureSpec);
@@ -376,7 +410,7 @@ public class TabTextView extends View {
             result = specSize;
         } else {
             // Measure the text (beware: ascent is a negative number)
-            result = mMeasuredTextLineHeight + getPaddingTop() + getPaddingBottom();
+            result = mRenderer.getLineHeight() + getPaddingTop() + getPaddingBottom();
             if (specMode == MeasureSpec.AT_MOST) {
                 // Respect AT_MOST value if that was what is called for by
                 // measureSpec
@@ -390,7 +424,7 @@ public class TabTextView extends View {
         return result;
     }
 
-    private static TextUtils.TruncateAt getTruncateAt(TypedArray ta, int id, TextUtils.TruncateAt defValue) {
+    static TextUtils.TruncateAt getTruncateAt(TypedArray ta, int id, TextUtils.TruncateAt defValue) {
         final int value = ta.getInt(id, -1);
         final TextUtils.TruncateAt[] table = new TextUtils.TruncateAt[]{
                 null,
@@ -407,50 +441,31 @@ public class TabTextView extends View {
         }
     }
 
-    public void setTypeface(Typeface tf, int style) {
-        if (style > 0) {
-            if (tf == null) {
-                tf = Typeface.defaultFromStyle(style);
-            } else {
-                tf = Typeface.create(tf, style);
-            }
-
-            setTypeface(tf);
-
-            // now compute what (if any) algorithmic styling is needed
-            int typefaceStyle = tf != null ? tf.getStyle() : 0;
-            int need = style & ~typefaceStyle;
-            boolean fakeBold = (need & Typeface.BOLD) != 0;
-            float skewX = (need & Typeface.ITALIC) != 0 ? -0.25f : 0;
-            mTextPaint.setFakeBoldText(fakeBold);
-            mTextPaint.setTextSkewX(skewX);
-            mBadgeTextPaint.setFakeBoldText(fakeBold);
-            mBadgeTextPaint.setTextSkewX(skewX);
-        } else {
-            mTextPaint.setFakeBoldText(false);
-            mTextPaint.setTextSkewX(0);
-            mBadgeTextPaint.setFakeBoldText(false);
-            mBadgeTextPaint.setTextSkewX(0);
-            setTypeface(tf);
+    /**
+     * Ellipsizes titles which do not fit into the width of the tab, e.g. of expanded tabs.
+     * The ellipsized title is cached until the text, the style or the width changes.
+     *
+     * @param where START, MIDDLE or END, or null to let long titles overflow (the default).
+     */
+    public void setEllipsize(TextUtils.TruncateAt where) {
+        if (mRenderer.getEllipsize() != where) {
+            mRenderer.setEllipsize(where);
+            invalidate();
         }
     }
 
-    private void setTypeface(Typeface tf) {
-        if (mTextPaint.getTypeface() != tf) {
-            mTextPaint.setTypeface(tf);
-            mBadgeTextPaint.setTypeface(tf);
+    public TextUtils.TruncateAt getEllipsize() {
+        return mRenderer.getEllipsize();
+    }
 
-            requestLayout();
-            invalidate();
-        }
+    public void setTypeface(Typeface tf, int style) {
+        setTextStyle(mStyle.withTypeface(tf, style));
     }
 
     public void setAllCaps(boolean allCaps) {
-        if (mAllCaps == allCaps) {
-            return;
+        if (mRenderer.setAllCaps(allCaps)) {
+            onTextBoundsChanged(false);
         }
-        mAllCaps = allCaps;
-        setText(mText, mAllCaps, false);
     }
 
     public void setTextColor(ColorStateList textColor) {
@@ -461,12 +476,4 @@ public class TabTextView extends View {
         applyCurrentDrawableStateTextColor();
         invalidate();
     }
-
-    private static int getTextWidth(Paint paint, String text) {
-        return (int) Math.ceil(paint.measureText(text));
-    }
-
-    private static int getLineHeight(Paint.FontMetricsInt fm) {
-        return fm.descent - fm.ascent + fm.leading;
-    }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.text.TextPaint;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures tab titles on a pool of background threads and stores the widths in the
+ * measure cache of {@link TabTextRenderer}, so tabs created afterwards find their widths
+ * in the cache instead of measuring on the UI thread. The caller has to reserve room for
+ * the titles with {@link TabTextRenderer#reserveMeasureCacheCapacity(int)}.
+ * All methods have to be called from the UI thread.
+ */
+class TabTitlePreMeasurer {
+
+	interface Callback {
+		/**
+		 * Called on the UI thread after all widths have been stored in the measure cache.
+		 */
+		void onTitlesMeasured();
+	}
+
+	private static final int MIN_TITLES_PER_TASK = 64;
+	private static final int MAX_THREAD_COUNT = 4;
+
+	private static ExecutorService sExecutor;
+	private static int sThreadCount;
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private Job currentJob;
+
+	/**
+	 * Starts measuring the titles, cancelling the previous job (if any).
+	 *
+	 * @param titles        The page titles, copied from the adapter on the UI thread
+	 * @param allCaps       Whether the tabs show their titles in upper case
+	 * @param templatePaint Paint with the style of the tabs, which is cloned for each task
+	 */
+	public void start(String[] titles, boolean allCaps, TextPaint templatePaint, Callback callback) {
+		cancel();
+
+		final Job job = new Job(titles, allCaps, templatePaint, callback);
+		final ExecutorService executor = getExecutor();
+		final int taskCount = Math.max(1, Math.min(sThreadCount, titles.length / MIN_TITLES_PER_TASK));
+		final int titlesPerTask = (titles.length + taskCount - 1) / taskCount;
+
+		// the widths are only put into the cache on the UI thread, so the cache does not need locking
+		currentJob = job;
+		job.remainingTaskCount = taskCount;
+
+		for (int i = 0; i < taskCount; i++) {
+			final int start = i * titlesPerTask;
+			executor.execute(new MeasureTask(job, start, Math.min(titles.length, start + titlesPerTask)));
+		}
+	}
+
+	public void cancel() {
+		if (currentJob != null) {
+			currentJob.cancelled = true;
+			currentJob = null;
+		}
+	}
+
+	public boolean isRunning() {
+		return (currentJob != null);
+	}
+
+	private void onTaskFinished(Job job, int start, int end) {
+		if (job != currentJob) {
+			// cancelled meanwhile
+			return;
+		}
+
+		final TextMeasureCache cache = TabTextRenderer.getMeasureCache();
+
+		for (int i = start; i < end; i++) {
+			cache.put(job.templatePaint, job.renderTexts[i], job.widths[i]);
+		}
+
+		job.remainingTaskCount--;
+
+		if (job.remainingTaskCount == 0) {
+			currentJob = null;
+			job.callback.onTitlesMeasured();
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (sExecutor == null) {
+			sThreadCount = Math.max(1, Math.min(MAX_THREAD_COUNT, Runtime.getRuntime().availableProcessors() - 1));
+			sExecutor = Executors.newFixedThreadPool(sThreadCount, new MeasureThreadFactory());
+		}
+		return sExecutor;
+	}
+
+	private static final class Job {
+		final String[] titles;
+		final boolean allCaps;
+		final TextPaint templatePaint;
+		final Callback callback;
+		final String[] renderTexts;
+		final int[] widths;
+		volatile boolean cancelled;
+		int remainingTaskCount; // only accessed from the UI thread
+
+		Job(String[] titles, boolean allCaps, TextPaint templatePaint, Callback callback) {
+			this.titles = titles;
+			this.allCaps = allCaps;
+			this.templatePaint = templatePaint;
+			this.callback = callback;
+			this.renderTexts = new String[titles.length];
+			this.widths = new int[titles.length];
+		}
+	}
+
+	private final class MeasureTask implements Runnable {
+		private final Job job;
+		private final int start;
+		private final int end;
+
+		MeasureTask(Job job, int start, int end) {
+			this.job = job;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			// Paint is not thread safe, every task measures with a clone of its own
+			final TextPaint paint = new TextPaint(job.templatePaint);
+
+			for (int i = start; i < end; i++) {
+				if (job.cancelled) {
+					return;
+				}
+
+				final String text = TabTextRenderer.getRenderText(job.titles[i], job.allCaps);
+				job.renderTexts[i] = text;
+				job.widths[i] = TextMeasureCache.measureTextWidth(paint, text);
+			}
+
+			handler.post(new Runnable() {
+				@Override
+				public void run() {
+					onTaskFinished(job, start, end);
+				}
+			});
+		}
+	}
+
+	private static final class MeasureThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					r.run();
+				}
+			}, "PagerSlidingTabStrip-measure-" + threadNumber.getAndIncrement());
+
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.util.SparseArray;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * Detached tab views, kept per view type for rebinding them to other tabs.
+ */
+class TabViewPool {
+	private static final int MAX_SCRAP_VIEWS_PER_TYPE = 32;
+
+	private final SparseArray<ArrayList<View>> scrapViews = new SparseArray<ArrayList<View>>();
+
+	/**
+	 * Returns a detached view of the given type, or null if there is none.
+	 */
+	public View get(int viewType) {
+		final ArrayList<View> views = scrapViews.get(viewType);
+		final int n = (views != null) ? views.size() : 0;
+
+		return (n > 0) ? views.remove(n - 1) : null;
+	}
+
+	/**
+	 * Adds a detached view to the pool.
+	 *
+	 * @return false if the pool of the view type is full and the view has been dropped
+	 */
+	public boolean put(int viewType, View view) {
+		ArrayList<View> views = scrapViews.get(viewType);
+
+		if (views == null) {
+			views = new ArrayList<View>();
+			scrapViews.put(viewType, views);
+		}
+
+		if (views.size() >= MAX_SCRAP_VIEWS_PER_TYPE) {
+			return false;
+		}
+
+		views.add(view);
+		return true;
+	}
+
+	public void clear() {
+		scrapViews.clear();
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.v4.util.LruCache;
+
+/**
+ * Bounded LRU cache of measured text widths, keyed by the text and
+ * every paint attribute which affects its width. The text is the one which is drawn,
+ * e.g. already upper case, so the text transformation is not part of the key.
+ */
+class TextMeasureCache {
+    // trimmed to maxSize here, so it can grow without being copied
+    private final LruCache<Key, Integer> cache = new LruCache<Key, Integer>(Integer.MAX_VALUE);
+    private final Key lookupKey = new Key();
+    private int maxSize;
+
+    public TextMeasureCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Measures the width of the text rounded up to the next integer, without using the cache.
+     * Can be called from any thread, as long as the paint is not used by another thread.
+     */
+    public static int measureTextWidth(Paint paint, String text) {
+        return (int) Math.ceil(paint.measureText(text));
+    }
+
+    /**
+     * Returns the width of the text rounded up to the next integer.
+     * Must be called from the UI thread.
+     */
+    public int getTextWidth(Paint paint, String text) {
+        final Key key = lookupKey;
+        key.set(paint, text);
+
+        Integer width = cache.get(key);
+
+        if (width == null) {
+            width = measureTextWidth(paint, text);
+            cache.put(new Key(key), width);
+            cache.trimToSize(maxSize);
+        }
+
+        return width;
+    }
+
+    /**
+     * Stores a width which has been measured elsewhere, see {@link #measureTextWidth(Paint, String)}.
+     * Must be called from the UI thread.
+     */
+    public void put(Paint paint, String text, int width) {
+        final Key key = new Key();
+        key.set(paint, text);
+        cache.put(key, width);
+        cache.trimToSize(maxSize);
+    }
+
+    /**
+     * Grows or shrinks the cache. Shrinking keeps the most recently used entries.
+     * Must be called from the UI thread.
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        // evicts the least recently used entries, only if the cache has shrunk
+        cache.trimToSize(maxSize);
+    }
+
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    public int getMissCount() {
+        return cache.missCount();
+    }
+
+    private static final class Key {
+        String text;
+        Typeface typeface;
+        float textSize;
+        boolean fakeBold;
+        float skewX;
+
+        Key() {
+        }
+
+        Key(Key other) {
+            text = other.text;
+            typeface = other.typeface;
+            textSize = other.textSize;
+            fakeBold = other.fakeBold;
+            skewX = other.skewX;
+        }
+
+        void set(Paint paint, String text) {
+            this.text = text;
+            this.typeface = paint.getTypeface();
+            this.textSize = paint.getTextSize();
+            this.fakeBold = paint.isFakeBoldText();
+            this.skewX = paint.getTextSkewX();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            final Key other = (Key) o;
+
+            return textSize == other.textSize &&
+                    skewX == other.skewX &&
+                    fakeBold == other.fakeBold &&
+                    (typeface == null ? other.typeface == null : typeface.equals(other.typeface)) &&
+                    text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = text.hashCode();
+            result = 31 * result + ((typeface != null) ? typeface.hashCode() : 0);
+            result = 31 * result + Float.floatToIntBits(textSize);
+            result = 31 * result + (fakeBold ? 1 : 0);
+            result = 31 * result + Float.floatToIntBits(skewX);
+            return result;
+        }
+    }
+}
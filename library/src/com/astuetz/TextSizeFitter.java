@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.graphics.Typeface;
+import android.support.v4.util.LruCache;
+import android.text.TextPaint;
+
+/**
+ * Finds the largest text size at which a text fits into a width, with a binary search
+ * over whole pixel sizes. The results are kept in a bounded LRU cache, keyed by the text,
+ * the width and every paint attribute which affects the width of the text.
+ * Must only be used from the UI thread.
+ */
+class TextSizeFitter {
+	private final LruCache<Key, Float> cache;
+	private final Key lookupKey = new Key();
+	private final TextPaint measurePaint = new TextPaint();
+
+	public TextSizeFitter(int maxSize) {
+		cache = new LruCache<Key, Float>(maxSize);
+	}
+
+	/**
+	 * Returns the largest text size which is not greater than the size of the paint,
+	 * at which the text fits into the available width. Returns the minimum size
+	 * if the text does not even fit at that size.
+	 *
+	 * @param paint Paint the text is drawn with, it is not modified
+	 */
+	public float fitTextSize(TextPaint paint, String text, int availableWidth, float minTextSize) {
+		final float maxTextSize = paint.getTextSize();
+
+		if (minTextSize >= maxTextSize) {
+			return maxTextSize;
+		}
+
+		final Key key = lookupKey;
+		key.set(paint, text, availableWidth, minTextSize);
+
+		Float size = cache.get(key);
+
+		if (size == null) {
+			size = search(paint, text, availableWidth, minTextSize, maxTextSize);
+			cache.put(new Key(key), size);
+		}
+
+		return size;
+	}
+
+	private float search(TextPaint paint, String text, int availableWidth, float minTextSize, float maxTextSize) {
+		final TextPaint p = measurePaint;
+		p.set(paint);
+
+		if (TextMeasureCache.measureTextWidth(p, text) <= availableWidth) {
+			return maxTextSize;
+		}
+
+		// the largest whole pixel size in [low, high] which fits, or the minimum size
+		int low = (int) Math.ceil(minTextSize);
+		int high = (int) Math.ceil(maxTextSize) - 1;
+
+		if (high < low) {
+			return minTextSize;
+		}
+
+		p.setTextSize(low);
+		if (TextMeasureCache.measureTextWidth(p, text) > availableWidth) {
+			return minTextSize;
+		}
+
+		while (low < high) {
+			final int mid = (low + high + 1) >>> 1;
+			p.setTextSize(mid);
+			if (TextMeasureCache.measureTextWidth(p, text) <= availableWidth) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		return low;
+	}
+
+	private static final class Key {
+		String text;
+		int availableWidth;
+		Typeface typeface;
+		float maxTextSize;
+		float minTextSize;
+		boolean fakeBold;
+		float skewX;
+
+		Key() {
+		}
+
+		Key(Key other) {
+			text = other.text;
+			availableWidth = other.availableWidth;
+			typeface = other.typeface;
+			maxTextSize = other.maxTextSize;
+			minTextSize = other.minTextSize;
+			fakeBold = other.fakeBold;
+			skewX = other.skewX;
+		}
+
+		void set(TextPaint paint, String text, int availableWidth, float minTextSize) {
+			this.text = text;
+			this.availableWidth = availableWidth;
+			this.typeface = paint.getTypeface();
+			this.maxTextSize = paint.getTextSize();
+			this.minTextSize = minTextSize;
+			this.fakeBold = paint.isFakeBoldText();
+			this.skewX = paint.getTextSkewX();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+
+			final Key other = (Key) o;
+
+			return availableWidth == other.availableWidth &&
+					maxTextSize == other.maxTextSize &&
+					minTextSize == other.minTextSize &&
+					skewX == other.skewX &&
+					fakeBold == other.fakeBold &&
+					(typeface == null ? other.typeface == null : typeface.equals(other.typeface)) &&
+					text.equals(other.text);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = text.hashCode();
+			result = 31 * result + availableWidth;
+			result = 31 * result + ((typeface != null) ? typeface.hashCode() : 0);
+			result = 31 * result + Float.floatToIntBits(maxTextSize);
+			result = 31 * result + Float.floatToIntBits(minTextSize);
+			result = 31 * result + (fakeBold ? 1 : 0);
+			result = 31 * result + Float.floatToIntBits(skewX);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,528 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.Arrays;
+
+/**
+ * Tabs container which keeps child views only for the tabs inside of the
+ * visible scroll window of its parent (plus a small margin on both sides).
+ * Views leaving the window are recycled and rebound to the tabs coming into it.
+ * <p/>
+ * Only the tabs which have been inside of that window are measured, all the others
+ * are laid out with the average width of the measured ones until they come into it.
+ */
+class VirtualTabsLayout extends ViewGroup {
+
+	interface TabViewAdapter {
+		int getTabCount();
+
+		int getTabViewType(int position);
+
+		/**
+		 * Returns the view type the given view has been created for.
+		 */
+		int getViewType(View tab);
+
+		View createTabView(int position);
+
+		void bindTabView(View tab, int position);
+
+		/**
+		 * Called after the view has been detached, before it is kept for reuse.
+		 */
+		void recycleTabView(View tab);
+
+		/**
+		 * Measures the natural size of the tab at the given position.
+		 * outSize[0] receives the width, outSize[1] the height.
+		 */
+		void measureTab(int position, int heightMeasureSpec, int[] outSize);
+	}
+
+	private static final int OFFSCREEN_TAB_COUNT = 2;
+	private static final int UNMEASURED = -1;
+
+	private final TabViewPool scrapViews = new TabViewPool();
+	private final int[] tempSize = new int[2];
+
+	private TabViewAdapter adapter;
+	private int tabCount;
+	private boolean shouldExpand;
+
+	private int[] tabWidths = new int[0];
+	private int[] tabLefts = new int[0];
+	private int[] tabRights = new int[0];
+	private int estimatedTabWidth;
+	private int maxTabHeight;
+	private int lastChildHeightMeasureSpec;
+	private int lastWidthMeasureSpec;
+	private boolean tabWidthsDirty = true;
+	private boolean tabEdgesValid;
+
+	// children are kept in position order: getChildAt(i) is the tab at (firstAttachedPosition + i)
+	private int firstAttachedPosition = 0;
+
+	public VirtualTabsLayout(Context context) {
+		super(context);
+	}
+
+	public void setTabViewAdapter(TabViewAdapter adapter) {
+		this.adapter = adapter;
+		notifyDataSetChanged();
+	}
+
+	public void setShouldExpand(boolean shouldExpand) {
+		if (this.shouldExpand != shouldExpand) {
+			this.shouldExpand = shouldExpand;
+			requestLayout();
+		}
+	}
+
+	public void notifyDataSetChanged() {
+		// the views are kept in the pool and rebound to the new tabs
+		recycleAllTabs();
+
+		tabCount = (adapter != null) ? adapter.getTabCount() : 0;
+		tabWidthsDirty = true;
+		tabEdgesValid = false;
+
+		requestLayout();
+	}
+
+	/**
+	 * Drops the attached and the recycled views, e.g. because the adapter has been exchanged.
+	 */
+	public void discardTabViews() {
+		removeAllViewsInLayout();
+		scrapViews.clear();
+		firstAttachedPosition = 0;
+		requestLayout();
+	}
+
+	public void notifyTabChanged(int position) {
+		if (position < 0 || position >= tabCount) {
+			return;
+		}
+
+		final int index = position - firstAttachedPosition;
+		final boolean exchanged = (index >= 0 && index < getChildCount()) && rebindTabView(index, position);
+
+		if (tabWidthsDirty || tabWidths[position] == UNMEASURED) {
+			// measured once the tab comes into the window
+			if (exchanged) {
+				requestLayout();
+			}
+		} else {
+			final int oldWidth = tabWidths[position];
+			measureTabWidth(position);
+
+			// the bound view invalidates itself if only its content changed,
+			// an exchanged view has to be measured and laid out
+			if (tabWidths[position] != oldWidth || exchanged) {
+				requestLayout();
+			}
+		}
+	}
+
+	public void notifyTabRangeInserted(int positionStart, int itemCount) {
+		final int oldTabCount = tabCount;
+
+		tabCount += itemCount;
+
+		if (!tabWidthsDirty) {
+			ensureTabArraysCapacity(tabCount);
+			System.arraycopy(tabWidths, positionStart, tabWidths, positionStart + itemCount, oldTabCount - positionStart);
+			Arrays.fill(tabWidths, positionStart, positionStart + itemCount, UNMEASURED);
+		}
+
+		onTabPositionsChanged();
+	}
+
+	public void notifyTabRangeRemoved(int positionStart, int itemCount) {
+		final int oldTabCount = tabCount;
+
+		tabCount -= itemCount;
+
+		if (!tabWidthsDirty) {
+			final int from = positionStart + itemCount;
+			System.arraycopy(tabWidths, from, tabWidths, positionStart, oldTabCount - from);
+		}
+
+		onTabPositionsChanged();
+	}
+
+	public void notifyTabMoved(int fromPosition, int toPosition) {
+		if (!tabWidthsDirty) {
+			final int width = tabWidths[fromPosition];
+			if (fromPosition < toPosition) {
+				System.arraycopy(tabWidths, fromPosition + 1, tabWidths, fromPosition, toPosition - fromPosition);
+			} else {
+				System.arraycopy(tabWidths, toPosition, tabWidths, toPosition + 1, fromPosition - toPosition);
+			}
+			tabWidths[toPosition] = width;
+		}
+
+		onTabPositionsChanged();
+	}
+
+	private void onTabPositionsChanged() {
+		// keep the attached views, but show the tabs which are now at their positions
+		int n = getChildCount();
+		while (n > 0 && firstAttachedPosition + n > tabCount) {
+			recycleTabView(--n);
+		}
+		for (int i = 0; i < n; i++) {
+			rebindTabView(i, firstAttachedPosition + i);
+		}
+
+		tabEdgesValid = false;
+		requestLayout();
+	}
+
+	public void notifyTabStylesChanged() {
+		// scrapped views still have the old style applied
+		scrapViews.clear();
+
+		tabWidthsDirty = true;
+		requestLayout();
+	}
+
+	public int getTabEdgeCount() {
+		return tabEdgesValid ? tabCount : 0;
+	}
+
+	public int[] getTabLefts() {
+		return tabLefts;
+	}
+
+	public int[] getTabRights() {
+		return tabRights;
+	}
+
+	public View getTabView(int position) {
+		final int index = position - firstAttachedPosition;
+		return (index >= 0 && index < getChildCount()) ? getChildAt(index) : null;
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		final int childHeightMeasureSpec = getChildMeasureSpec(heightMeasureSpec, 0, LayoutParams.MATCH_PARENT);
+
+		if (childHeightMeasureSpec != lastChildHeightMeasureSpec) {
+			lastChildHeightMeasureSpec = childHeightMeasureSpec;
+			tabWidthsDirty = true;
+		}
+
+		if (tabWidthsDirty) {
+			resetTabWidths();
+		}
+
+		lastWidthMeasureSpec = widthMeasureSpec;
+
+		if (tabCount > 0 && estimatedTabWidth == 0) {
+			// a first width to estimate the others with
+			final int position = Math.min(firstAttachedPosition, tabCount - 1);
+			measureTabWidths(position, position);
+		}
+
+		// the window moves over the tabs while their estimated widths are replaced
+		int width = updateTabEdges();
+		while (measureTabWidths(getFirstWindowTab(), getLastWindowTab())) {
+			width = updateTabEdges();
+		}
+
+		final int height = resolveSize(maxTabHeight, heightMeasureSpec);
+
+		final int n = getChildCount();
+		for (int i = 0; i < n; i++) {
+			measureTabView(getChildAt(i), firstAttachedPosition + i, height);
+		}
+
+		setMeasuredDimension(width, height);
+	}
+
+	@Override
+	protected void onLayout(boolean changed, int l, int t, int r, int b) {
+		final int height = b - t;
+		final int n = getChildCount();
+
+		for (int i = 0; i < n; i++) {
+			final int position = firstAttachedPosition + i;
+			getChildAt(i).layout(tabLefts[position], 0, tabRights[position], height);
+		}
+
+		updateAttachedTabs();
+	}
+
+	/**
+	 * Attaches the tabs which came into the visible window of the parent and
+	 * recycles the ones which left it. Should be called whenever the parent scrolls.
+	 */
+	public void updateAttachedTabs() {
+		final View parent = (View) getParent();
+
+		if (parent == null || tabCount == 0) {
+			recycleAllTabs();
+			return;
+		}
+
+		if (!tabEdgesValid) {
+			// wait for the next layout pass
+			return;
+		}
+
+		int first = getFirstWindowTab();
+		int last = getLastWindowTab();
+
+		if (measureTabWidths(first, last)) {
+			// the estimated widths of the tabs coming into the window have been replaced,
+			// the parent picks up the new content width in the next layout pass
+			do {
+				updateTabEdges();
+				first = getFirstWindowTab();
+				last = getLastWindowTab();
+			} while (measureTabWidths(first, last));
+
+			requestLayout();
+		}
+
+		int lastAttachedPosition = firstAttachedPosition + getChildCount() - 1;
+		boolean changed = false;
+
+		if (first > lastAttachedPosition || last < firstAttachedPosition) {
+			changed = recycleAllTabs();
+		} else {
+			while (firstAttachedPosition < first) {
+				recycleTabView(0);
+				firstAttachedPosition++;
+				changed = true;
+			}
+			while (lastAttachedPosition > last) {
+				recycleTabView(getChildCount() - 1);
+				lastAttachedPosition--;
+				changed = true;
+			}
+		}
+
+		if (getChildCount() == 0) {
+			firstAttachedPosition = first;
+			lastAttachedPosition = first - 1;
+		}
+
+		while (firstAttachedPosition > first) {
+			firstAttachedPosition--;
+			attachTabView(firstAttachedPosition, 0);
+			changed = true;
+		}
+		while (lastAttachedPosition < last) {
+			lastAttachedPosition++;
+			attachTabView(lastAttachedPosition, getChildCount());
+			changed = true;
+		}
+
+		if (changed) {
+			invalidate();
+		}
+	}
+
+	private void resetTabWidths() {
+		ensureTabArraysCapacity(tabCount);
+		Arrays.fill(tabWidths, 0, tabCount, UNMEASURED);
+
+		estimatedTabWidth = 0;
+		maxTabHeight = 0;
+		tabWidthsDirty = false;
+	}
+
+	/**
+	 * Measures the tabs in the given range which only have an estimated width so far.
+	 *
+	 * @return true if a tab has been measured, the tab edges are outdated then
+	 */
+	private boolean measureTabWidths(int first, int last) {
+		boolean measured = false;
+
+		for (int i = first; i <= last; i++) {
+			if (tabWidths[i] == UNMEASURED) {
+				measureTabWidth(i);
+				measured = true;
+			}
+		}
+		return measured;
+	}
+
+	private void measureTabWidth(int position) {
+		final int[] size = tempSize;
+
+		adapter.measureTab(position, lastChildHeightMeasureSpec, size);
+		tabWidths[position] = size[0];
+		maxTabHeight = Math.max(maxTabHeight, size[1]);
+	}
+
+	private void ensureTabArraysCapacity(int capacity) {
+		if (tabWidths.length < capacity) {
+			final int[] widths = new int[Math.max(capacity, tabWidths.length * 2)];
+			System.arraycopy(tabWidths, 0, widths, 0, tabWidths.length);
+			tabWidths = widths;
+			tabLefts = new int[widths.length];
+			tabRights = new int[widths.length];
+		}
+	}
+
+	/**
+	 * Lays out the tabs with their measured or estimated widths.
+	 *
+	 * @return the width of this container
+	 */
+	private int updateTabEdges() {
+		int measuredWidth = 0;
+		int measuredCount = 0;
+
+		for (int i = 0; i < tabCount; i++) {
+			if (tabWidths[i] != UNMEASURED) {
+				measuredWidth += tabWidths[i];
+				measuredCount++;
+			}
+		}
+
+		if (measuredCount > 0) {
+			estimatedTabWidth = measuredWidth / measuredCount;
+		}
+
+		final int contentWidth = measuredWidth + (tabCount - measuredCount) * estimatedTabWidth;
+		final int width = resolveSize(contentWidth, lastWidthMeasureSpec);
+		final boolean expand = shouldExpand && tabCount > 0 && contentWidth < width;
+		final int expandedWidth = expand ? (width / tabCount) : 0;
+		final int expandedRemainder = expand ? (width % tabCount) : 0;
+
+		int left = 0;
+		for (int i = 0; i < tabCount; i++) {
+			final int w;
+			if (expand) {
+				w = expandedWidth + ((i < expandedRemainder) ? 1 : 0);
+			} else {
+				w = (tabWidths[i] != UNMEASURED) ? tabWidths[i] : estimatedTabWidth;
+			}
+			tabLefts[i] = left;
+			tabRights[i] = left + w;
+			left += w;
+		}
+
+		tabEdgesValid = true;
+
+		return width;
+	}
+
+	private int getFirstWindowTab() {
+		final View parent = (View) getParent();
+		final int windowLeft = (parent != null) ? parent.getScrollX() - getLeft() : 0;
+
+		return Math.max(0, findTabAt(windowLeft) - OFFSCREEN_TAB_COUNT);
+	}
+
+	private int getLastWindowTab() {
+		final View parent = (View) getParent();
+		final int windowLeft = (parent != null) ? parent.getScrollX() - getLeft() : 0;
+		// the parent has no width before its first layout, the window is not wider than the screen
+		final int windowWidth = (parent != null && parent.getWidth() > 0)
+				? parent.getWidth() : getResources().getDisplayMetrics().widthPixels;
+
+		return Math.min(tabCount - 1, findTabAt(windowLeft + windowWidth - 1) + OFFSCREEN_TAB_COUNT);
+	}
+
+	private int findTabAt(int x) {
+		return TabStripGeometry.findTabAt(tabRights, tabCount, x);
+	}
+
+	private View obtainTabView(int position) {
+		final View scrapView = scrapViews.get(adapter.getTabViewType(position));
+		final View tab = (scrapView != null) ? scrapView : adapter.createTabView(position);
+
+		adapter.bindTabView(tab, position);
+
+		return tab;
+	}
+
+	private void addTabView(View tab, int index) {
+		// recycled views keep their layout params
+		LayoutParams lp = tab.getLayoutParams();
+		if (lp == null) {
+			lp = generateDefaultLayoutParams();
+		}
+		addViewInLayout(tab, index, lp, true);
+	}
+
+	private void attachTabView(int position, int index) {
+		final View tab = obtainTabView(position);
+
+		addTabView(tab, index);
+
+		final int height = getMeasuredHeight();
+		measureTabView(tab, position, height);
+		tab.layout(tabLefts[position], 0, tabRights[position], height);
+	}
+
+	/**
+	 * Binds the attached view at the given index to the tab at the given position. The view is
+	 * exchanged if the tab needs another view type, the new one is measured in the next layout pass.
+	 *
+	 * @return true if the view has been exchanged
+	 */
+	private boolean rebindTabView(int index, int position) {
+		final View tab = getChildAt(index);
+
+		if (adapter.getViewType(tab) == adapter.getTabViewType(position)) {
+			adapter.bindTabView(tab, position);
+			return false;
+		}
+
+		recycleTabView(index);
+		addTabView(obtainTabView(position), index);
+		return true;
+	}
+
+	private void recycleTabView(int index) {
+		final View tab = getChildAt(index);
+		removeViewInLayout(tab);
+		adapter.recycleTabView(tab);
+		scrapViews.put(adapter.getViewType(tab), tab);
+	}
+
+	private boolean recycleAllTabs() {
+		final int n = getChildCount();
+		for (int i = n - 1; i >= 0; i--) {
+			recycleTabView(i);
+		}
+		return (n > 0);
+	}
+
+	private void measureTabView(View tab, int position, int height) {
+		tab.measure(
+				MeasureSpec.makeMeasureSpec(tabRights[position] - tabLefts[position], MeasureSpec.EXACTLY),
+				MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+	}
+
+	@Override
+	protected LayoutParams generateDefaultLayoutParams() {
+		return new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.MATCH_PARENT);
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Plain JUnit tests of {@link TabStripGeometry}, which does not need Robolectric.
+ */
+public class TabStripGeometryTest {
+	// four tabs with a gap between the second and the third one
+	private static final int[] LEFTS = {0, 100, 250, 300};
+	private static final int[] RIGHTS = {100, 200, 300, 450};
+	private static final int COUNT = 4;
+
+	@Test
+	public void findTabAtReturnsFirstTabForItsEdges() {
+		assertEquals(0, TabStripGeometry.findTabAt(RIGHTS, COUNT, 0));
+		assertEquals(0, TabStripGeometry.findTabAt(RIGHTS, COUNT, 99));
+	}
+
+	@Test
+	public void findTabAtTreatsRightEdgeAsPartOfNextTab() {
+		assertEquals(1, TabStripGeometry.findTabAt(RIGHTS, COUNT, 100));
+	}
+
+	@Test
+	public void findTabAtReturnsNextTabInGap() {
+		assertEquals(2, TabStripGeometry.findTabAt(RIGHTS, COUNT, 200));
+		assertEquals(2, TabStripGeometry.findTabAt(RIGHTS, COUNT, 249));
+	}
+
+	@Test
+	public void findTabAtReturnsLastTabForItsEdgesAndBeyond() {
+		assertEquals(3, TabStripGeometry.findTabAt(RIGHTS, COUNT, 300));
+		assertEquals(3, TabStripGeometry.findTabAt(RIGHTS, COUNT, 449));
+		assertEquals(3, TabStripGeometry.findTabAt(RIGHTS, COUNT, 10000));
+	}
+
+	@Test
+	public void findTabAtReturnsFirstTabBeforeAllTabs() {
+		assertEquals(0, TabStripGeometry.findTabAt(RIGHTS, COUNT, -10));
+	}
+
+	@Test
+	public void findTabAtOnlyUsesValidEntries() {
+		assertEquals(1, TabStripGeometry.findTabAt(RIGHTS, 2, 400));
+	}
+
+	@Test
+	public void findTabAtReturnsZeroWithoutTabs() {
+		assertEquals(0, TabStripGeometry.findTabAt(new int[0], 0, 0));
+		assertEquals(0, TabStripGeometry.findTabAt(new int[0], 0, 100));
+		assertEquals(0, TabStripGeometry.findTabAt(RIGHTS, 0, 100));
+	}
+
+	@Test
+	public void interpolateTabEdgeAtOffsetZeroReturnsCurrentEdge() {
+		for (int i = 0; i < COUNT; i++) {
+			assertEquals(LEFTS[i], TabStripGeometry.interpolateTabEdge(LEFTS, COUNT, i, 0.0f));
+			assertEquals(RIGHTS[i], TabStripGeometry.interpolateTabEdge(RIGHTS, COUNT, i, 0.0f));
+		}
+	}
+
+	@Test
+	public void interpolateTabEdgeAtOffsetOneReturnsNextEdge() {
+		for (int i = 0; i < COUNT - 1; i++) {
+			assertEquals(LEFTS[i + 1], TabStripGeometry.interpolateTabEdge(LEFTS, COUNT, i, 1.0f));
+			assertEquals(RIGHTS[i + 1], TabStripGeometry.interpolateTabEdge(RIGHTS, COUNT, i, 1.0f));
+		}
+	}
+
+	@Test
+	public void interpolateTabEdgeStaysAtLastTab() {
+		assertEquals(LEFTS[COUNT - 1], TabStripGeometry.interpolateTabEdge(LEFTS, COUNT, COUNT - 1, 1.0f));
+		assertEquals(RIGHTS[COUNT - 1], TabStripGeometry.interpolateTabEdge(RIGHTS, COUNT, COUNT - 1, 0.5f));
+	}
+
+	@Test
+	public void interpolateTabEdgeAcrossGap() {
+		assertEquals(175, TabStripGeometry.interpolateTabEdge(LEFTS, COUNT, 1, 0.5f));
+	}
+
+	@Test
+	public void computeScrollXKeepsTabAtScrollOffset() {
+		assertEquals(200, TabStripGeometry.computeScrollX(LEFTS, RIGHTS, COUNT, 2, 0.0f, 400, false, 50));
+		assertEquals(100, TabStripGeometry.computeScrollX(LEFTS, RIGHTS, COUNT, 1, 0.5f, 400, false, 50));
+	}
+
+	@Test
+	public void computeScrollXClampsToZeroWithScrollOffset() {
+		assertEquals(0, TabStripGeometry.computeScrollX(LEFTS, RIGHTS, COUNT, 0, 0.0f, 400, false, 50));
+		assertEquals(0, TabStripGeometry.computeScrollX(LEFTS, RIGHTS, COUNT, 1, 0.0f, 400, false, 1000));
+	}
+
+	@Test
+	public void computeScrollXCentersTab() {
+		// (400 - 150) / 2 = 125 pixels left of the last tab
+		assertEquals(175, TabStripGeometry.computeScrollX(LEFTS, RIGHTS, COUNT, 3, 0.0f, 400, true, 0));
+	}
+
+	@Test
+	public void computeScrollXClampsToZeroWhenCentering() {
+		assertEquals(0, TabStripGeometry.computeScrollX(LEFTS, RIGHTS, COUNT, 0, 0.0f, 1000, true, 0));
+		assertEquals(0, TabStripGeometry.computeScrollX(LEFTS, RIGHTS, COUNT, 1, 0.5f, 1000, true, 0));
+	}
+}
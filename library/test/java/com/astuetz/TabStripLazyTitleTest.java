@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.astuetz.pagerslidingtabstrip.BuildConfig;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the strip scrolls to the current tab with the widths of the lazily resolved titles,
+ * not with the ones of the placeholders they have replaced.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TabStripLazyTitleTest {
+	private static final int TAB_COUNT = 100;
+	private static final int CURRENT_POSITION = 50;
+
+	@Test
+	public void firstLayoutKeepsCurrentTabAtScrollOffset() {
+		final TabStripTestFixtures.CapturingViewPager pager = new TabStripTestFixtures.CapturingViewPager(RuntimeEnvironment.application);
+		pager.setAdapter(new LazyAdapter(TAB_COUNT));
+		pager.setCurrentItem(CURRENT_POSITION);
+
+		final PagerSlidingTabStrip strip = new PagerSlidingTabStrip(RuntimeEnvironment.application);
+		// fewer resolved titles up front than fit into the strip, the first layout resolves the others
+		strip.setLazyTitleDistance(1);
+		strip.setViewPager(pager);
+		TabStripTestFixtures.layout(strip);
+
+		// the layout the resolved titles have requested, run again by the view root in the same frame
+		strip.requestLayout();
+		TabStripTestFixtures.layout(strip);
+
+		final ViewGroup tabsContainer = (ViewGroup) strip.getChildAt(0);
+		final View currentTab = tabsContainer.getChildAt(CURRENT_POSITION);
+
+		assertEquals(strip.getScrollOffset(), currentTab.getLeft() - strip.getScrollX());
+	}
+
+	private static class LazyAdapter extends TabStripTestFixtures.TitleAdapter implements PagerSlidingTabStrip.LazyTitleProvider {
+		LazyAdapter(int count) {
+			super(count);
+		}
+
+		@Override
+		public CharSequence getPageTitle(int position) {
+			// wider than the placeholder of an unresolved title
+			return "A lazily resolved title which is wider than the placeholder " + position;
+		}
+	}
+}
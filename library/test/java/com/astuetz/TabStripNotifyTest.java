@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.astuetz.pagerslidingtabstrip.BuildConfig;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that the granular notify methods only rebind the tabs they are called for,
+ * and that the badges follow the tabs.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TabStripNotifyTest {
+	private static final int TAB_COUNT = 10;
+	private static final int CHANGED_POSITION = 3;
+
+	@Test
+	public void notifyTabChangedRebindsOnlyThatTab() {
+		assertRebindsOnlyChangedTab(false);
+	}
+
+	@Test
+	public void notifyTabChangedRebindsOnlyThatTabVirtualized() {
+		assertRebindsOnlyChangedTab(true);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void notifyTabChangedRejectsPositionAfterLastTab() {
+		createStrip(new RenamableAdapter(TAB_COUNT), false).notifyTabChanged(TAB_COUNT);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void notifyTabChangedRejectsNegativePosition() {
+		createStrip(new RenamableAdapter(TAB_COUNT), true).notifyTabChanged(-1);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void notifyTabRangeRemovedRejectsRangeAfterLastTab() {
+		createStrip(new RenamableAdapter(TAB_COUNT), false).notifyTabRangeRemoved(TAB_COUNT - 1, 2);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void notifyTabRangeInsertedRejectsPositionAfterEnd() {
+		createStrip(new RenamableAdapter(TAB_COUNT), false).notifyTabRangeInserted(TAB_COUNT + 1, 1);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void notifyTabMovedRejectsPositionAfterLastTab() {
+		createStrip(new RenamableAdapter(TAB_COUNT), false).notifyTabMoved(0, TAB_COUNT);
+	}
+
+	@Test
+	public void badgesMoveWithInsertedTabs() {
+		final RenamableAdapter adapter = new RenamableAdapter(TAB_COUNT);
+		final PagerSlidingTabStrip strip = createStrip(adapter, false);
+
+		strip.setBadge(CHANGED_POSITION, "1");
+		adapter.count += 2;
+		strip.notifyTabRangeInserted(0, 2);
+
+		assertNull(strip.getBadge(CHANGED_POSITION));
+		assertEquals("1", strip.getBadge(CHANGED_POSITION + 2));
+	}
+
+	@Test
+	public void notifyDataSetChangedClearsBadges() {
+		final PagerSlidingTabStrip strip = createStrip(new RenamableAdapter(TAB_COUNT), false);
+
+		strip.setBadge(CHANGED_POSITION, "1");
+		strip.notifyDataSetChanged();
+
+		assertNull(strip.getBadge(CHANGED_POSITION));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void setBadgeRejectsPositionAfterLastTab() {
+		createStrip(new RenamableAdapter(TAB_COUNT), false).setBadge(TAB_COUNT, "1");
+	}
+
+	@Test
+	public void preMeasuredListenerSeesTabsWithCoalescing() {
+		final LazyAdapter adapter = new LazyAdapter(TAB_COUNT);
+		final PagerSlidingTabStrip strip = createStrip(adapter, false);
+		final ViewGroup tabsContainer = (ViewGroup) strip.getChildAt(0);
+		final int[] tabCount = {-1};
+
+		strip.setDataSetChangeCoalescingEnabled(true);
+		adapter.count += 2;
+		strip.notifyDataSetChangedAsync(new PagerSlidingTabStrip.OnTabsPreMeasuredListener() {
+			@Override
+			public void onTabsPreMeasured(PagerSlidingTabStrip strip) {
+				tabCount[0] = tabsContainer.getChildCount();
+			}
+		});
+
+		assertEquals(TAB_COUNT + 2, tabCount[0]);
+	}
+
+	private void assertRebindsOnlyChangedTab(boolean virtualized) {
+		final RenamableAdapter adapter = new RenamableAdapter(TAB_COUNT);
+		final PagerSlidingTabStrip strip = createStrip(adapter, virtualized);
+		final ViewGroup tabsContainer = (ViewGroup) strip.getChildAt(0);
+		final int n = tabsContainer.getChildCount();
+		final View[] oldTabs = new View[n];
+
+		for (int i = 0; i < n; i++) {
+			oldTabs[i] = tabsContainer.getChildAt(i);
+		}
+
+		// all the titles change, but only one tab is notified
+		for (int i = 0; i < TAB_COUNT; i++) {
+			adapter.titles[i] = "Renamed " + i;
+		}
+		strip.notifyTabChanged(CHANGED_POSITION);
+		TabStripTestFixtures.layout(strip);
+
+		assertEquals(n, tabsContainer.getChildCount());
+
+		for (int i = 0; i < n; i++) {
+			final TabTextView tab = (TabTextView) tabsContainer.getChildAt(i);
+			final String expected = (i == CHANGED_POSITION) ? "Renamed " + i : "Tab " + i;
+
+			assertSame("View of tab " + i, oldTabs[i], tab);
+			assertEquals("Title of tab " + i, expected, tab.getText().toString());
+		}
+	}
+
+	private static PagerSlidingTabStrip createStrip(RenamableAdapter adapter, boolean virtualized) {
+		final TabStripTestFixtures.CapturingViewPager pager = new TabStripTestFixtures.CapturingViewPager(RuntimeEnvironment.application);
+		pager.setAdapter(adapter);
+		return TabStripTestFixtures.createStrip(RuntimeEnvironment.application, pager, virtualized);
+	}
+
+	private static class RenamableAdapter extends TabStripTestFixtures.TitleAdapter {
+		final String[] titles;
+		int count;
+
+		RenamableAdapter(int count) {
+			super(count);
+
+			this.count = count;
+			titles = new String[count];
+			for (int i = 0; i < count; i++) {
+				titles[i] = "Tab " + i;
+			}
+		}
+
+		@Override
+		public int getCount() {
+			return count;
+		}
+
+		@Override
+		public CharSequence getPageTitle(int position) {
+			// the titles of inserted tabs are not checked
+			return (position < titles.length) ? titles[position] : "Tab " + position;
+		}
+	}
+
+	private static class LazyAdapter extends RenamableAdapter implements PagerSlidingTabStrip.LazyTitleProvider {
+		LazyAdapter(int count) {
+			super(count);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import com.astuetz.pagerslidingtabstrip.BuildConfig;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a page change only updates the selected state of the old and the new tab,
+ * not of all the tabs.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TabStripSelectionTest {
+	private static final int TAB_COUNT = 200;
+
+	@Test
+	public void pageChangeChangesAtMostTwoTabs() {
+		assertPageChangesChangeAtMostTwoTabs(false);
+	}
+
+	@Test
+	public void pageChangeChangesAtMostTwoTabsVirtualized() {
+		assertPageChangesChangeAtMostTwoTabs(true);
+	}
+
+	private void assertPageChangesChangeAtMostTwoTabs(boolean virtualized) {
+		final TabStripTestFixtures.CapturingViewPager pager = TabStripTestFixtures.createPager(RuntimeEnvironment.application, TAB_COUNT);
+		final PagerSlidingTabStrip strip = TabStripTestFixtures.createStrip(RuntimeEnvironment.application, pager, virtualized);
+
+		for (int position = 1; position < 5; position++) {
+			final int oldCount = strip.getTabSelectedStateChangeCount();
+
+			pager.listener.onPageSelected(position);
+			TabStripTestFixtures.layout(strip);
+
+			final int changes = strip.getTabSelectedStateChangeCount() - oldCount;
+			assertTrue("Selected state changes for page " + position + ": " + changes, changes <= 2);
+		}
+	}
+}
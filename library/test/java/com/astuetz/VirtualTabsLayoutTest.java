@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 Haruki Hasegawa <h6a.h4i.0@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.astuetz;
+
+import com.astuetz.pagerslidingtabstrip.BuildConfig;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that virtualized tabs only measure the tabs around the visible area,
+ * not all the tabs of the adapter.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class VirtualTabsLayoutTest {
+	private static final int TAB_COUNT = 1000;
+	// far more than fit into the strip, far less than all the tabs
+	private static final int MAX_TITLE_COUNT = TAB_COUNT / 10;
+
+	@Test
+	public void setupOnlyResolvesTitlesAroundVisibleArea() {
+		final CountingAdapter adapter = new CountingAdapter(TAB_COUNT);
+		createStrip(adapter);
+
+		assertTrue("Titles resolved: " + adapter.titleCount, adapter.titleCount < MAX_TITLE_COUNT);
+	}
+
+	@Test
+	public void restyleOnlyResolvesTitlesAroundVisibleArea() {
+		final CountingAdapter adapter = new CountingAdapter(TAB_COUNT);
+		final PagerSlidingTabStrip strip = createStrip(adapter);
+
+		adapter.titleCount = 0;
+		strip.setTextSize(strip.getTextSize() * 2);
+		TabStripTestFixtures.layout(strip);
+
+		assertTrue("Titles resolved: " + adapter.titleCount, adapter.titleCount < MAX_TITLE_COUNT);
+	}
+
+	private static PagerSlidingTabStrip createStrip(CountingAdapter adapter) {
+		final TabStripTestFixtures.CapturingViewPager pager = new TabStripTestFixtures.CapturingViewPager(RuntimeEnvironment.application);
+		pager.setAdapter(adapter);
+		return TabStripTestFixtures.createStrip(RuntimeEnvironment.application, pager, true);
+	}
+
+	private static class CountingAdapter extends TabStripTestFixtures.TitleAdapter {
+		int titleCount;
+
+		CountingAdapter(int count) {
+			super(count);
+		}
+
+		@Override
+		public CharSequence getPageTitle(int position) {
+			titleCount++;
+			return super.getPageTitle(position);
+		}
+	}
+}